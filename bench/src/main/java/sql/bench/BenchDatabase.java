@@ -0,0 +1,89 @@
+package sql.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+
+import sql.DataManager;
+import sql.Relation;
+import sql.SecondaryIndex;
+
+// Berkeley DB environment in a temporary directory, laid out like SQLParser.db_init
+public class BenchDatabase {
+	public static final String DB_TABLE_LIST = "--DBTableList";
+
+	private File home;
+	private Environment environment;
+	private Database database;
+
+	public BenchDatabase() throws IOException {
+		home = Files.createTempDirectory("sql-bench").toFile();
+
+		EnvironmentConfig envConfig = new EnvironmentConfig();
+		envConfig.setAllowCreate(true);
+		environment = new Environment(home, envConfig);
+
+		DatabaseConfig dbConfig = new DatabaseConfig();
+		dbConfig.setAllowCreate(true);
+		dbConfig.setSortedDuplicates(false);
+		database = environment.openDatabase(null, "myDatabase", dbConfig);
+
+		DataManager.insert(database, DB_TABLE_LIST, DataManager.serialize(new ArrayList<String>()));
+		Relation.getCache().clear();
+	}
+
+	public Environment getEnvironment() {
+		return environment;
+	}
+
+	public Database getDatabase() {
+		return database;
+	}
+
+	// Register table in the table list, as CREATE TABLE does
+	@SuppressWarnings("unchecked")
+	public void addToTableList(String table) {
+		ArrayList<String> tableList = (ArrayList<String>) DataManager.deserialize(DataManager.search(database, DB_TABLE_LIST));
+		tableList.add(table);
+		DataManager.replace(database, DB_TABLE_LIST, DataManager.serialize(tableList));
+	}
+
+	public void close() {
+		Relation.getCache().clear();
+		SecondaryIndex.closeAll(database);
+		database.close();
+		environment.close();
+		delete(home);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	// Sink for query output so printing does not dominate measurements
+	public static PrintStream nullStream() {
+		return new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+	}
+}
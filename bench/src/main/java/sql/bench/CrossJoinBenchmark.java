@@ -0,0 +1,72 @@
+package sql.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sql.DataType;
+import sql.MyException;
+import sql.NestedLoopJoinOperator;
+import sql.Operator;
+import sql.Relation;
+import sql.ScanOperator;
+import sql.Value;
+
+// NestedLoopJoinOperator (cartesian product), sizes are kept small since the result has rows^2 records
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrossJoinBenchmark {
+	@Param({"100", "300", "1000"})
+	public int rows;
+
+	@Param({"INT", "CHAR", "DATE"})
+	public String keyType;
+
+	private BenchDatabase bench;
+	private Operator product;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		bench = new BenchDatabase();
+		DataType type = Tables.keyType(keyType);
+		Relation left = Tables.create(bench.getDatabase(), "l", type);
+		Tables.fill(bench.getDatabase(), left, type, rows, 0, 1);
+		Relation right = Tables.create(bench.getDatabase(), "r", type);
+		Tables.fill(bench.getDatabase(), right, type, rows, 0, 2);
+		product = new NestedLoopJoinOperator(new ScanOperator(left.getSchema(), left.getRecords()),
+				new ScanOperator(right.getSchema(), right.getRecords()));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		bench.close();
+	}
+
+	@Benchmark
+	public void join(Blackhole blackhole) throws MyException {
+		product.open();
+		ArrayList<Value> rec;
+		while ((rec = product.next()) != null) {
+			blackhole.consume(rec);
+		}
+		product.close();
+	}
+}
@@ -0,0 +1,76 @@
+package sql.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sql.BooleanExpression;
+import sql.DBMessage;
+import sql.DataType;
+import sql.MyException;
+import sql.Relation;
+
+/*
+ * Relation.delete with a key range predicate
+ *
+ * With children, table c refers to the deleted table p through a nullable
+ * foreign key so every deleted parent row cascades a set-null into c.
+ * Tables are rebuilt before each invocation, so use few iterations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DeleteBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int rows;
+
+	@Param({"INT", "CHAR", "DATE"})
+	public String keyType;
+
+	@Param({"0.01", "0.1", "0.5"})
+	public double selectivity;
+
+	@Param({"false", "true"})
+	public boolean children;
+
+	private BenchDatabase bench;
+	private Relation parent;
+	private BooleanExpression where;
+
+	@Setup(Level.Invocation)
+	public void setUp() throws Exception {
+		bench = new BenchDatabase();
+		DataType type = Tables.keyType(keyType);
+		parent = Tables.store(bench, "p", type, rows, null, 0, 1);
+		if (children) {
+			Tables.store(bench, "c", type, rows, "p", rows, 2);
+			parent = Relation.db_search(bench.getDatabase(), "p");
+		}
+		where = Tables.lessThan(null, "k", type, (int) Math.round(rows * selectivity));
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		bench.close();
+	}
+
+	@Benchmark
+	public DBMessage delete() throws MyException {
+		return parent.delete(bench.getDatabase(), where);
+	}
+}
@@ -0,0 +1,104 @@
+package sql.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sql.BatchFilter;
+import sql.BooleanExpression;
+import sql.BooleanNode;
+import sql.ColValTuple;
+import sql.Comparator;
+import sql.DataType;
+import sql.MyException;
+import sql.ParallelFilter;
+import sql.Predicate;
+import sql.Relation;
+import sql.Value;
+import sql.WhereCompiler;
+
+// BooleanExpression.filter over one loaded relation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int rows;
+
+	@Param({"INT", "CHAR", "DATE"})
+	public String keyType;
+
+	@Param({"0.01", "0.1", "0.5"})
+	public double selectivity;
+
+	// Row threshold for ParallelFilter, 0 keeps filtering on one thread
+	@Param({"0"})
+	public int parallelRows;
+
+	// Evaluate through WhereCompiler instead of the bound tree
+	@Param({"false", "true"})
+	public boolean compileWhere;
+
+	// Evaluate columnar copies in BatchFilter batches instead of row by row
+	@Param({"true", "false"})
+	public boolean batch;
+
+	private BenchDatabase bench;
+	private Relation relation;
+	private BooleanExpression keyRange;
+	private BooleanExpression conjunction;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		bench = new BenchDatabase();
+		DataType type = Tables.keyType(keyType);
+		relation = Tables.create(bench.getDatabase(), "t", type);
+		Tables.fill(bench.getDatabase(), relation, type, rows, 0, 42);
+		ParallelFilter.setThreshold(parallelRows);
+		WhereCompiler.setEnabled(compileWhere);
+		BatchFilter.setEnabled(batch);
+
+		int bound = (int) Math.round(rows * selectivity);
+		keyRange = Tables.lessThan("t", "k", type, bound);
+
+		// k < bound and (n >= 0 or s is null), the second conjunct is always true
+		BooleanNode n = new BooleanNode(Predicate.generate(Comparator.GTE, new ColValTuple(null, "n"), new ColValTuple(new Value(0))));
+		BooleanNode s = new BooleanNode(new Predicate(Comparator.IN, null, "s"));
+		BooleanNode range = Tables.lessThan(null, "k", type, bound).conjuncts().get(0);
+		conjunction = new BooleanExpression(new BooleanNode('&', range, new BooleanNode('|', n, s)));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ParallelFilter.setThreshold(ParallelFilter.DEFAULT_THRESHOLD);
+		WhereCompiler.setEnabled(false);
+		BatchFilter.setEnabled(true);
+		bench.close();
+	}
+
+	@Benchmark
+	public ArrayList<ArrayList<Value>> keyRange() throws MyException {
+		return keyRange.filter(relation);
+	}
+
+	@Benchmark
+	public ArrayList<ArrayList<Value>> conjunction() throws MyException {
+		return conjunction.filter(relation);
+	}
+}
@@ -0,0 +1,93 @@
+package sql.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sql.DBMessage;
+import sql.DataType;
+import sql.Relation;
+import sql.Value;
+
+// Relation.insertRecord and insertRecords into a table which already holds rows rows
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertBenchmark {
+	private static final int BATCH_ROWS = 1000;
+
+	@Param({"1000", "10000", "100000"})
+	public int rows;
+
+	@Param({"INT", "CHAR", "DATE"})
+	public String keyType;
+
+	private BenchDatabase bench;
+	private DataType type;
+	private Relation relation;
+	private int nextKey;
+	private final ArrayList<String> colList = new ArrayList<String>();
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		bench = new BenchDatabase();
+		type = Tables.keyType(keyType);
+		relation = Tables.store(bench, "t", type, rows, null, 0, 42);
+		nextKey = rows;
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		bench.close();
+	}
+
+	// Constraint check and append only
+	@Benchmark
+	public DBMessage insertRecord() {
+		return relation.insertRecord(bench.getDatabase(), colList, Tables.row(type, nextKey++, -1));
+	}
+
+	// Constraint check, append and write back
+	@Benchmark
+	public DBMessage insertAndStore() {
+		DBMessage msg = relation.insertRecord(bench.getDatabase(), colList, Tables.row(type, nextKey++, -1));
+		Relation.db_replace(bench.getDatabase(), relation);
+		return msg;
+	}
+
+	// One multi-row insert, checked and written back together (time per row)
+	@Benchmark
+	@OperationsPerInvocation(BATCH_ROWS)
+	public DBMessage insertRowsAndStore() {
+		ArrayList<ArrayList<Value>> valLists = new ArrayList<ArrayList<Value>>(BATCH_ROWS);
+		for (int i = 0; i < BATCH_ROWS; i++) {
+			valLists.add(Tables.row(type, nextKey++, -1));
+		}
+		DBMessage msg = relation.insertRecords(bench.getDatabase(), colList, valLists);
+		Relation.db_replace(bench.getDatabase(), relation);
+		return msg;
+	}
+
+	// Rejected by the primary key check
+	@Benchmark
+	public DBMessage insertDuplicate() {
+		return relation.insertRecord(bench.getDatabase(), colList, Tables.row(type, rows / 2, -1));
+	}
+}
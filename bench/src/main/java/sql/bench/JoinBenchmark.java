@@ -0,0 +1,110 @@
+package sql.bench;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sql.BooleanExpression;
+import sql.BooleanNode;
+import sql.DBMessage;
+import sql.DataType;
+import sql.HashJoinOperator;
+import sql.MyException;
+import sql.Operator;
+import sql.Relation;
+import sql.Rename;
+import sql.ScanOperator;
+import sql.Value;
+
+/*
+ * Equi-join of parent p(k) with child c(ref), every child row matches one parent row
+ *
+ * hashJoin runs a HashJoinOperator over the in-memory rows of both tables, the select
+ * benchmarks run the whole SELECT path (planner, pushdown, projection and printing to a
+ * discarding stream).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JoinBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int rows;
+
+	@Param({"INT", "CHAR", "DATE"})
+	public String keyType;
+
+	@Param({"0.01", "0.1", "1.0"})
+	public double selectivity;
+
+	private BenchDatabase bench;
+	private Operator equiJoinPlan;
+	private ArrayList<Rename> tables;
+	private BooleanExpression equiJoin;
+	private BooleanExpression filteredJoin;
+	private PrintStream out;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		bench = new BenchDatabase();
+		DataType type = Tables.keyType(keyType);
+		Relation parent = Tables.store(bench, "p", type, rows, null, 0, 1);
+		Relation child = Tables.store(bench, "c", type, rows, "p", rows, 2);
+		// p.k = c.ref, the child side is hashed as JoinPlanner does for inputs of equal size
+		equiJoinPlan = new HashJoinOperator(new ScanOperator(parent.getSchema(), parent.getRecords()),
+				new ScanOperator(child.getSchema(), child.getRecords()), new int[] {0}, new int[] {3}, false);
+
+		tables = new ArrayList<Rename>();
+		tables.add(new Rename("p", null, null));
+		tables.add(new Rename("c", null, null));
+
+		BooleanNode join = Tables.equal("p", "k", "c", "ref");
+		equiJoin = new BooleanExpression(join);
+		BooleanNode range = Tables.lessThan("p", "k", type, (int) Math.round(rows * selectivity)).conjuncts().get(0);
+		filteredJoin = new BooleanExpression(new BooleanNode('&', join, range));
+		out = BenchDatabase.nullStream();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		bench.close();
+	}
+
+	@Benchmark
+	public void hashJoin(Blackhole blackhole) throws MyException {
+		equiJoinPlan.open();
+		ArrayList<Value> rec;
+		while ((rec = equiJoinPlan.next()) != null) {
+			blackhole.consume(rec);
+		}
+		equiJoinPlan.close();
+	}
+
+	@Benchmark
+	public DBMessage selectEquiJoin() {
+		return Relation.selectQuery(bench.getDatabase(), null, tables, equiJoin, out);
+	}
+
+	// Equi-join with a parent key range pushed below the join
+	@Benchmark
+	public DBMessage selectFilteredJoin() {
+		return Relation.selectQuery(bench.getDatabase(), null, tables, filteredJoin, out);
+	}
+}
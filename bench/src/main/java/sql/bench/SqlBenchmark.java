@@ -0,0 +1,133 @@
+package sql.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sql.DataType;
+import sql.Relation;
+
+/*
+ * End-to-end statements fed as SQL text through SQLParser
+ *
+ * SQLParser is generated into the default package and cannot be imported here,
+ * so it is driven through method handles. Its static database handle is pointed
+ * at the benchmark environment and the session output goes to a discarding stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int rows;
+
+	private static MethodHandle newParser;
+	private static MethodHandle reInitParser;
+	private static MethodHandle commandParser;
+
+	private BenchDatabase bench;
+	private MethodHandle reInit;
+	private MethodHandle command;
+	private int nextKey;
+
+	private static synchronized void bindParser() throws Exception {
+		if (commandParser != null) {
+			return;
+		}
+		Class<?> parser = Class.forName("SQLParser");
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+		newParser = lookup.findConstructor(parser, MethodType.methodType(void.class, InputStream.class));
+		reInitParser = lookup.findVirtual(parser, "ReInit", MethodType.methodType(void.class, InputStream.class));
+		commandParser = lookup.findVirtual(parser, "command", MethodType.methodType(void.class));
+	}
+
+	private static void setParserField(Object parser, String name, Object value) throws Exception {
+		Field field = Class.forName("SQLParser").getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(parser, value);
+	}
+
+	// Parse and execute statements in the session of this benchmark
+	void execute(String sql) throws Throwable {
+		reInit.invokeExact((InputStream) new ByteArrayInputStream(sql.getBytes(StandardCharsets.UTF_8)));
+		command.invokeExact();
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		bindParser();
+		bench = new BenchDatabase();
+		setParserField(null, "myDbEnvironment", bench.getEnvironment());
+		setParserField(null, "myDatabase", bench.getDatabase());
+
+		Object parser = newParser.invoke((InputStream) new ByteArrayInputStream(new byte[0]));
+		setParserField(parser, "out", BenchDatabase.nullStream());
+		reInit = reInitParser.bindTo(parser);
+		command = commandParser.bindTo(parser);
+
+		execute("create table t (k int not null, n int, s char(12), primary key (k));");
+		execute("create table u (k int not null, ref int, s char(12), primary key (k), foreign key (ref) references t (k));");
+
+		// Bulk load through the API, SQL text is measured by the benchmarks below
+		Relation t = Relation.db_search(bench.getDatabase(), "t");
+		Tables.fill(bench.getDatabase(), t, DataType.TYPE_INT, rows, 0, 1);
+		Relation.db_replace(bench.getDatabase(), t);
+		execute("insert into u values (0, 0, 'u');");
+		nextKey = rows;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		setParserField(null, "myDatabase", null);
+		setParserField(null, "myDbEnvironment", null);
+		bench.close();
+	}
+
+	@Benchmark
+	public void insert() throws Throwable {
+		execute("insert into t values (" + (nextKey++) + ", 1, 'abc');");
+	}
+
+	@Benchmark
+	public void selectPoint() throws Throwable {
+		execute("select * from t where k = " + (rows / 2) + ";");
+	}
+
+	@Benchmark
+	public void selectRange() throws Throwable {
+		execute("select k, s from t where k < 100 and n >= 0;");
+	}
+
+	@Benchmark
+	public void selectJoin() throws Throwable {
+		execute("select t.k, u.s from t, u where t.k = u.ref;");
+	}
+
+	@Benchmark
+	public void describe() throws Throwable {
+		execute("desc t;");
+	}
+}
@@ -0,0 +1,149 @@
+package sql.bench;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import com.sleepycat.je.Database;
+
+import sql.Attribute;
+import sql.BooleanExpression;
+import sql.BooleanNode;
+import sql.ColValTuple;
+import sql.Comparator;
+import sql.DBMessage;
+import sql.DataType;
+import sql.Date;
+import sql.ForeignKeyConstraint;
+import sql.Predicate;
+import sql.Relation;
+import sql.Value;
+
+/*
+ * Builds benchmark relations through the public Relation API
+ *
+ * Every table has a primary key column k of the requested key type holding the
+ * keys 0 .. rows-1 in shuffled order, plus an int payload column and a char column.
+ * Child tables add a nullable column ref referring to k of a parent table.
+ */
+public class Tables {
+	public static final int CHAR_LENGTH = 12;
+	private static final LocalDate EPOCH = LocalDate.of(1900, 1, 1);
+
+	// INT, CHAR or DATE
+	public static DataType keyType(String name) {
+		if (name.equals("INT")) return DataType.TYPE_INT;
+		if (name.equals("CHAR")) return DataType.TYPE_CHAR;
+		if (name.equals("DATE")) return DataType.TYPE_DATE;
+		throw new IllegalArgumentException(name);
+	}
+
+	// i-th key of the given type, keys compare in the same order as i
+	public static Value key(DataType type, int i) {
+		switch (type) {
+		case TYPE_INT:
+			return new Value(i);
+		case TYPE_CHAR:
+			return new Value(String.format("k%09d", i));
+		default:
+			return new Value(new Date(EPOCH.plusDays(i).toString()));
+		}
+	}
+
+	public static ArrayList<Integer> shuffled(int rows, long seed) {
+		ArrayList<Integer> order = new ArrayList<Integer>(rows);
+		for (int i = 0; i < rows; i++) {
+			order.add(i);
+		}
+		Collections.shuffle(order, new Random(seed));
+		return order;
+	}
+
+	private static Attribute column(String name, DataType type, boolean nullable) {
+		return new Attribute(name, type, type == DataType.TYPE_CHAR ? CHAR_LENGTH : 0, nullable);
+	}
+
+	// Empty table (k, n, s) with primary key k
+	public static Relation create(Database db, String table, DataType keyType) {
+		return create(db, table, keyType, null);
+	}
+
+	// Empty table (k, n, s[, ref]) with primary key k, ref refers to parent(k) if parent is not null
+	public static Relation create(Database db, String table, DataType keyType, String parent) {
+		ArrayList<Attribute> colDefs = new ArrayList<Attribute>();
+		colDefs.add(column("k", keyType, false));
+		colDefs.add(column("n", DataType.TYPE_INT, true));
+		colDefs.add(column("s", DataType.TYPE_CHAR, true));
+
+		ArrayList<ForeignKeyConstraint> foreign = new ArrayList<ForeignKeyConstraint>();
+		if (parent != null) {
+			colDefs.add(column("ref", keyType, true));
+			ArrayList<String> fkey = new ArrayList<String>();
+			fkey.add("ref");
+			ArrayList<String> rkey = new ArrayList<String>();
+			rkey.add("k");
+			foreign.add(new ForeignKeyConstraint(fkey, parent, rkey));
+		}
+
+		ArrayList<ArrayList<String>> primary = new ArrayList<ArrayList<String>>();
+		ArrayList<String> pKey = new ArrayList<String>();
+		pKey.add("k");
+		primary.add(pKey);
+
+		Relation relation = new Relation(table);
+		check(relation.createSchema(db, colDefs, primary, foreign));
+		return relation;
+	}
+
+	public static ArrayList<Value> row(DataType keyType, int key, int parentKey) {
+		ArrayList<Value> vals = new ArrayList<Value>();
+		vals.add(key(keyType, key));
+		vals.add(new Value(key % 1000));
+		vals.add(new Value("s" + (key % 100)));
+		if (parentKey >= 0) {
+			vals.add(key(keyType, parentKey));
+		}
+		return vals;
+	}
+
+	// Fill with keys 0 .. rows-1 in shuffled order, child rows refer to random keys below parentRows
+	public static void fill(Database db, Relation relation, DataType keyType, int rows, int parentRows, long seed) {
+		Random random = new Random(seed);
+		ArrayList<String> colList = new ArrayList<String>();
+		for (int key : shuffled(rows, seed)) {
+			int parentKey = parentRows > 0 ? random.nextInt(parentRows) : -1;
+			check(relation.insertRecord(db, colList, row(keyType, key, parentKey)));
+		}
+	}
+
+	// Create, fill and store a table, registering it in the table list
+	public static Relation store(BenchDatabase bench, String table, DataType keyType, int rows, String parent, int parentRows, long seed) {
+		Database db = bench.getDatabase();
+		Relation relation = create(db, table, keyType, parent);
+		Relation.db_insert(db, relation);
+		bench.addToTableList(table);
+
+		relation = Relation.db_search(db, table);
+		fill(db, relation, keyType, rows, parentRows, seed);
+		Relation.db_replace(db, relation);
+		return relation;
+	}
+
+	// table.column < key(bound), true for bound rows of a filled table
+	public static BooleanExpression lessThan(String table, String column, DataType keyType, int bound) {
+		Predicate p = Predicate.generate(Comparator.LT, new ColValTuple(table, column), new ColValTuple(key(keyType, bound)));
+		return new BooleanExpression(new BooleanNode(p));
+	}
+
+	// t0.c0 = t1.c1
+	public static BooleanNode equal(String t0, String c0, String t1, String c1) {
+		return new BooleanNode(Predicate.generate(Comparator.EQ, new ColValTuple(t0, c0), new ColValTuple(t1, c1)));
+	}
+
+	private static void check(DBMessage msg) {
+		if (msg != null) {
+			throw new IllegalStateException(msg.toString());
+		}
+	}
+}
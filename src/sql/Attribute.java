@@ -37,6 +37,19 @@ public class Attribute implements Serializable {
 		this(attrName, dataType, nullable);
 		charLength = charlen;
 	}
+
+	// Restore stored attribute (used by RecordCodec)
+	Attribute(String attrName, String fullName, DataType dataType, int charlen, boolean nullable, boolean primary, boolean foreign, String refTable, String refColumn) {
+		name = attrName;
+		this.fullName = fullName;
+		this.dataType = dataType;
+		charLength = charlen;
+		this.nullable = nullable;
+		this.primary = primary;
+		this.foreign = foreign;
+		this.refTable = refTable;
+		this.refColumn = refColumn;
+	}
 	
 	public Attribute copyAttribute() {
 		Attribute attr = new Attribute(this.name);
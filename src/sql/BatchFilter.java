@@ -0,0 +1,196 @@
+package sql;
+
+/*
+ * Evaluates a bound WHERE clause over a columnar table in batches of BATCH_SIZE rows
+ *
+ * Every node of the tree fills two bitmaps for a batch, one with the rows for which it is true
+ * and one with the rows for which it is false; rows in neither are unknown. Predicates on INT,
+ * DATE and coded CHAR columns compare a whole column vector at once (see compare), other
+ * nodes fall back to evaluating row by row. AND, OR and NOT combine the bitmaps of their
+ * children a word at a time with the same three-valued results as MyCalc:
+ *   AND: true = true1 & true2, false = false1 | false2
+ *   OR:  true = true1 | true2, false = false1 & false2
+ *   NOT: true and false swapped
+ * Unlike the row interpreter there is no short circuit, both children are evaluated for every row.
+ *
+ * Bitmaps live in one long[] per caller: the node at depth d writes its true words at
+ * offset and its false words at offset + WORDS, and its right child uses offset + 2 * WORDS.
+ */
+public class BatchFilter {
+	public static final int BATCH_SIZE = 1024;
+	static final int WORDS = BATCH_SIZE / 64;
+
+	private static volatile boolean enabled = true;
+
+	// Batch evaluation of columnar tables, row by row evaluation if off
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	// Bitmap array for a tree
+	static long[] newBitmaps(BoundNode root) {
+		return new long[2 * WORDS * depth(root)];
+	}
+
+	private static int depth(BoundNode node) {
+		if (node instanceof BoundNot) {
+			return depth(((BoundNot) node).b);
+		}
+		if (node instanceof BoundAnd) {
+			BoundAnd and = (BoundAnd) node;
+			return Math.max(depth(and.b1), 1 + depth(and.b2));
+		}
+		if (node instanceof BoundOr) {
+			BoundOr or = (BoundOr) node;
+			return Math.max(depth(or.b1), 1 + depth(or.b2));
+		}
+		return 1;
+	}
+
+	static int wordCount(int count) {
+		return (count + 63) >>> 6;
+	}
+
+	// Bits 0 to n - 1
+	static long mask(int n) {
+		return (n >= 64) ? -1L : (1L << n) - 1;
+	}
+
+	/*
+	 * Append to result (from position count) the positions in [from, to) of the rows of t for which root
+	 * evaluates to true, ascending, and return the new count
+	 * bits comes from newBitmaps(root)
+	 */
+	static int select(BoundNode root, ColumnarTable t, int from, int to, long[] bits, int[] result, int count) {
+		for (int start = from; start < to; start += BATCH_SIZE) {
+			int n = Math.min(BATCH_SIZE, to - start);
+			root.evaluate(t, start, n, bits, 0);
+			int words = wordCount(n);
+			for (int w = 0; w < words; w++) {
+				long word = bits[w];
+				int base = start + (w << 6);
+				while (word != 0) {
+					result[count++] = base + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+		}
+		return count;
+	}
+
+	// Bitmaps of one row by row evaluation of rows [from, from + count)
+	static void evaluateRows(BoundNode node, ColumnarTable t, int from, int count, long[] bits, int offset) {
+		int words = wordCount(count);
+		for (int w = 0; w < words; w++) {
+			long isTrue = 0;
+			long isFalse = 0;
+			int base = from + (w << 6);
+			int n = Math.min(64, count - (w << 6));
+			for (int b = 0; b < n; b++) {
+				int r = node.evaluate(t, base + b);
+				if (r == 1) {
+					isTrue |= 1L << b;
+				}
+				else if (r == -1) {
+					isFalse |= 1L << b;
+				}
+			}
+			bits[offset + w] = isTrue;
+			bits[offset + WORDS + w] = isFalse;
+		}
+	}
+
+	// Bitmaps of column col IS NULL (ifNull 1) or IS NOT NULL (ifNull -1)
+	static void nullCheck(ColumnarTable t, int col, int ifNull, int from, int count, long[] bits, int offset) {
+		int words = wordCount(count);
+		for (int w = 0; w < words; w++) {
+			long valid = mask(count - (w << 6));
+			long isNull = t.getNullBits(col, from + (w << 6)) & valid;
+			bits[offset + w] = (ifNull == 1) ? isNull : valid & ~isNull;
+			bits[offset + WORDS + w] = (ifNull == 1) ? valid & ~isNull : isNull;
+		}
+	}
+
+	/*
+	 * Bitmaps of column col (an int[] column, see ColumnarTable.getInt) compared with value,
+	 * unknown for null cells, ifLess, ifEqual and ifGreater as in BoundPredicate
+	 */
+	static void compare(ColumnarTable t, int col, int value, int ifLess, int ifEqual, int ifGreater, int from, int count, long[] bits, int offset) {
+		int[] values = t.getInts(col);
+		int words = wordCount(count);
+		for (int w = 0; w < words; w++) {
+			int base = from + (w << 6);
+			int n = Math.min(64, count - (w << 6));
+			long less = 0;
+			long equal = 0;
+			for (int b = 0; b < n; b++) {
+				int x = values[base + b];
+				less |= ((x < value) ? 1L : 0L) << b;
+				equal |= ((x == value) ? 1L : 0L) << b;
+			}
+			long valid = mask(n) & ~t.getNullBits(col, base);
+			setResult(less & valid, equal & valid, valid, ifLess, ifEqual, ifGreater, bits, offset + w);
+		}
+	}
+
+	// Bitmaps of column col0 compared with column col1 (int[] columns), unknown if either is null
+	static void compareColumns(ColumnarTable t, int col0, int col1, int ifLess, int ifEqual, int ifGreater, int from, int count, long[] bits, int offset) {
+		int[] values0 = t.getInts(col0);
+		int[] values1 = t.getInts(col1);
+		int words = wordCount(count);
+		for (int w = 0; w < words; w++) {
+			int base = from + (w << 6);
+			int n = Math.min(64, count - (w << 6));
+			long less = 0;
+			long equal = 0;
+			for (int b = 0; b < n; b++) {
+				int x = values0[base + b];
+				int y = values1[base + b];
+				less |= ((x < y) ? 1L : 0L) << b;
+				equal |= ((x == y) ? 1L : 0L) << b;
+			}
+			long valid = mask(n) & ~(t.getNullBits(col0, base) | t.getNullBits(col1, base));
+			setResult(less & valid, equal & valid, valid, ifLess, ifEqual, ifGreater, bits, offset + w);
+		}
+	}
+
+	// Store one word of comparison outcomes, every valid row is either true or false
+	private static void setResult(long less, long equal, long valid, int ifLess, int ifEqual, int ifGreater, long[] bits, int index) {
+		long greater = valid & ~(less | equal);
+		long isTrue = ((ifLess == 1) ? less : 0) | ((ifEqual == 1) ? equal : 0) | ((ifGreater == 1) ? greater : 0);
+		bits[index] = isTrue;
+		bits[index + WORDS] = valid & ~isTrue;
+	}
+
+	static void not(int count, long[] bits, int offset) {
+		int words = wordCount(count);
+		for (int w = 0; w < words; w++) {
+			long isTrue = bits[offset + w];
+			bits[offset + w] = bits[offset + WORDS + w];
+			bits[offset + WORDS + w] = isTrue;
+		}
+	}
+
+	// Combine the bitmaps at offset (left) with the ones after them (right) into the left ones
+	static void and(int count, long[] bits, int offset) {
+		int words = wordCount(count);
+		int right = offset + 2 * WORDS;
+		for (int w = 0; w < words; w++) {
+			bits[offset + w] &= bits[right + w];
+			bits[offset + WORDS + w] |= bits[right + WORDS + w];
+		}
+	}
+
+	static void or(int count, long[] bits, int offset) {
+		int words = wordCount(count);
+		int right = offset + 2 * WORDS;
+		for (int w = 0; w < words; w++) {
+			bits[offset + w] |= bits[right + w];
+			bits[offset + WORDS + w] &= bits[right + WORDS + w];
+		}
+	}
+}
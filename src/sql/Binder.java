@@ -0,0 +1,65 @@
+package sql;
+
+import java.util.ArrayList;
+
+// Resolves column references against a schema once per query
+public class Binder {
+
+	/*
+	 * Index of table.column (table can be null) in schema
+	 * Throws WhereTableNotSpecified, WhereColumnNotExist or WhereAmbiguousReference
+	 */
+	public static int resolveColumn(ArrayList<Attribute> schema, String table, String column) throws MyException {
+		String col = (table == null) ? column : table + "." + column;
+		int size = schema.size();
+		int index = -1;
+		boolean tableSpecified = table == null ? true : false;
+		
+		for(int idx = 0; idx < size; idx++) {
+			Attribute attr = schema.get(idx);
+			boolean match = attr.nameMatch(col);
+			if (match) {
+				tableSpecified = true;
+				if (index < 0) {
+					index = idx;
+				}
+				else {
+					throw new MyException(MsgType.WhereAmbiguousReference);
+				}
+			}
+			else if (table != null) {
+				if(table.equals(attr.getTableName())) {
+					tableSpecified = true;
+				}
+			}
+		}
+		if (!tableSpecified) {
+			throw new MyException(MsgType.WhereTableNotSpecified);
+		}
+		
+		if (index < 0) {
+			throw new MyException(MsgType.WhereColumnNotExist);
+		}
+		
+		return index;
+	}
+
+	// Same as resolveColumn but every failure is reported as SelectColumnResolveError
+	public static int resolveSelectColumn(ArrayList<Attribute> schema, Rename rename) throws MyException {
+		try {
+			return resolveColumn(schema, rename.tableName, rename.columnName);
+		} catch (MyException e) {
+			String searchPattern = (rename.tableName == null ? "" : rename.tableName + ".") + rename.columnName;
+			throw new MyException(MsgType.SelectColumnResolveError, searchPattern);
+		}
+	}
+
+	// Indexes of unqualified column names of one relation
+	public static int[] resolveColumns(ArrayList<Attribute> schema, ArrayList<String> columns) throws MyException {
+		int[] indexes = new int[columns.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = resolveColumn(schema, null, columns.get(i));
+		}
+		return indexes;
+	}
+}
@@ -9,31 +9,64 @@ public class BooleanExpression {
 		root = node;
 	}
 	
-	// Return filtered records
+	// Return filtered records (errors are reported only if there is a record to evaluate)
 	public ArrayList<ArrayList<Value>> filter(Relation r) throws MyException {
-		if (root == null) {
+		if (root == null || r.getRecords().size() == 0) {
 			return r.getRecords();
 		}
 
-		int check;
-		ArrayList<Attribute> schema = r.getSchema();
-		ArrayList<ArrayList<Value>> records = r.getRecords();
-		
-		ArrayList<ArrayList<Value>> result = new ArrayList<ArrayList<Value>>();
-		
+		BoundExpression where;
 		try {
-			for (ArrayList<Value> rec : records) {
-				check = root.evaluate(rec, schema);
-				
-				if (check == 1) {
+			where = bind(r.getSchema());
+		} catch (MyException e) {
+			where = bindLenient(r.getSchema());
+			ArrayList<ArrayList<Value>> result = new ArrayList<ArrayList<Value>>();
+			for (ArrayList<Value> rec : r.getRecords()) {
+				if (where.check(rec) == 1) {
 					result.add(rec);
 				}
 			}
+			return result;
+		}
+		return where.filter(r.getRecords());
+	}
+	
+	// Resolve every column reference against schema once (compiled if WhereCompiler is enabled)
+	public BoundExpression bind(ArrayList<Attribute> schema) throws MyException {
+		if (root == null) {
+			return new BoundExpression(null);
+		}
+		return new BoundExpression(WhereCompiler.compile(root.bind(schema)));
+	}
+	
+	// Same as bind, but a predicate which cannot be bound fails only on the rows which evaluate it (see BoundExpression.check)
+	public BoundExpression bindLenient(ArrayList<Attribute> schema) {
+		if (root == null) {
+			return new BoundExpression(null);
+		}
+		return new BoundExpression(root.bindLenient(schema));
+	}
+	
+	// Split top level AND chain into its operands (left to right)
+	public ArrayList<BooleanNode> conjuncts() {
+		ArrayList<BooleanNode> list = new ArrayList<BooleanNode>();
+		if (root != null) {
+			root.collectConjuncts(list);
 		}
-		catch (MyException e) {
-			throw e;
+		return list;
+	}
+	
+	// AND chain of the given nodes, null if there is nothing to check
+	public static BooleanExpression conjunction(ArrayList<BooleanNode> nodes) {
+		if (nodes.size() == 0) {
+			return null;
+		}
+		
+		BooleanNode node = nodes.get(0);
+		for (int i = 1; i < nodes.size(); i++) {
+			node = new BooleanNode('&', node, nodes.get(i));
 		}
-		return result;
+		return new BooleanExpression(node);
 	}
 	
 	// For debugging
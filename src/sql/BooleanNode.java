@@ -21,38 +21,65 @@ public class BooleanNode {
 		predicate = p;
 	}
 	
-	// Evaluate for one record entity 'rec'
-	public int evaluate(ArrayList<Value> rec, ArrayList<Attribute> schema) throws MyException {
-		int retval;
-		try {
-			switch(type) {
-				case B_NOT:
-					retval = MyCalc.not(b1.evaluate(rec, schema));
-					break;
-				case B_AND:
-					retval = b1.evaluate(rec, schema);
-					if (retval != -1)	// Short Circuit Evaluation
-					{
-						retval = MyCalc.and(retval, b2.evaluate(rec, schema));
-					}
-					break;
-				case B_OR:
-					retval = b1.evaluate(rec, schema);
-					if (retval != 1)	// Short Circuit Evaluation
-					{
-						retval = MyCalc.or(retval, b2.evaluate(rec, schema));
-					}
-					break;
-				default:
-					retval = predicate.evaluate(rec, schema);
-					break;
-			}
+	// Resolve every predicate against schema, errors are reported in evaluation order
+	BoundNode bind(ArrayList<Attribute> schema) throws MyException {
+		switch(type) {
+			case B_NOT:
+				return new BoundNot(b1.bind(schema));
+			case B_AND:
+				return new BoundAnd(b1.bind(schema), b2.bind(schema));
+			case B_OR:
+				return new BoundOr(b1.bind(schema), b2.bind(schema));
+			default:
+				return predicate.bind(schema);
+		}
+	}
+	
+	BoundNode bindLenient(ArrayList<Attribute> schema) {
+		switch(type) {
+			case B_NOT:
+				return new BoundNot(b1.bindLenient(schema));
+			case B_AND:
+				return new BoundAnd(b1.bindLenient(schema), b2.bindLenient(schema));
+			case B_OR:
+				return new BoundOr(b1.bindLenient(schema), b2.bindLenient(schema));
+			default:
+				try {
+					return predicate.bind(schema);
+				} catch (MyException e) {
+					return new BoundFailure(e);
+				}
+		}
+	}
+	
+	void collectConjuncts(ArrayList<BooleanNode> list) {
+		if (type == BExprType.B_AND) {
+			b1.collectConjuncts(list);
+			b2.collectConjuncts(list);
 		}
-		catch (MyException e) {
-			throw e;
+		else {
+			list.add(this);
 		}
-		
-		return retval;
+	}
+	
+	void collectPredicates(ArrayList<Predicate> list) {
+		switch(type) {
+			case B_NOT:
+				b1.collectPredicates(list);
+				break;
+			case B_AND:
+			case B_OR:
+				b1.collectPredicates(list);
+				b2.collectPredicates(list);
+				break;
+			default:
+				list.add(predicate);
+				break;
+		}
+	}
+	
+	boolean isPredicate() {
+		return type == BExprType.B_PREDICATE;
 	}
 	
 	// For debugging
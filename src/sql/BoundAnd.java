@@ -0,0 +1,38 @@
+package sql;
+
+import java.util.ArrayList;
+
+// Conjunction of two bound nodes, b2 is skipped when b1 is false
+class BoundAnd extends BoundNode {
+	final BoundNode b1, b2;
+
+	BoundAnd(BoundNode b1, BoundNode b2) {
+		this.b1 = b1;
+		this.b2 = b2;
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		int retval = b1.evaluate(rec);
+		if (retval != -1) {	// Short Circuit Evaluation
+			retval = MyCalc.and(retval, b2.evaluate(rec));
+		}
+		return retval;
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		int retval = b1.evaluate(t, row);
+		if (retval != -1) {	// Short Circuit Evaluation
+			retval = MyCalc.and(retval, b2.evaluate(t, row));
+		}
+		return retval;
+	}
+
+	@Override
+	void evaluate(ColumnarTable t, int from, int count, long[] bits, int offset) {
+		b1.evaluate(t, from, count, bits, offset);
+		b2.evaluate(t, from, count, bits, offset + 2 * BatchFilter.WORDS);
+		BatchFilter.and(count, bits, offset);
+	}
+}
@@ -0,0 +1,73 @@
+package sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// WHERE clause bound to one schema, can be evaluated on any number of records of that schema
+public class BoundExpression {
+	private final BoundNode root;	// null means always true
+
+	BoundExpression(BoundNode root) {
+		this.root = root;
+	}
+
+	BoundNode getRoot() {
+		return root;
+	}
+
+	// Evaluate for one record (1: true, 0: unknown, -1: false)
+	public int evaluate(ArrayList<Value> rec) {
+		if (root == null) {
+			return 1;
+		}
+		return root.evaluate(rec);
+	}
+
+	// Same as evaluate, with the error of a predicate which could not be bound
+	public int check(ArrayList<Value> rec) throws MyException {
+		try {
+			return evaluate(rec);
+		} catch (BoundFailure.Failure f) {
+			throw f.error;
+		}
+	}
+
+	// Return records for which this evaluates to true
+	public ArrayList<ArrayList<Value>> filter(ArrayList<ArrayList<Value>> records) {
+		if (root == null) {
+			return records;
+		}
+		if (ParallelFilter.applies(records.size())) {
+			return ParallelFilter.filter(root, records);
+		}
+
+		ArrayList<ArrayList<Value>> result = new ArrayList<ArrayList<Value>>();
+		for (ArrayList<Value> rec : records) {
+			if (root.evaluate(rec) == 1) {
+				result.add(rec);
+			}
+		}
+		return result;
+	}
+
+	// Return positions (ascending) of the rows of t for which this evaluates to true
+	public int[] select(ColumnarTable t) {
+		int rowCount = t.getRowCount();
+		if (root != null && ParallelFilter.applies(rowCount)) {
+			return ParallelFilter.select(root, t);
+		}
+
+		int[] result = new int[rowCount];
+		int count = 0;
+		if (root != null && BatchFilter.isEnabled()) {
+			count = BatchFilter.select(root, t, 0, rowCount, BatchFilter.newBitmaps(root), result, 0);
+			return (count == rowCount) ? result : Arrays.copyOf(result, count);
+		}
+		for (int row = 0; row < rowCount; row++) {
+			if (root == null || root.evaluate(t, row) == 1) {
+				result[count++] = row;
+			}
+		}
+		return (count == rowCount) ? result : Arrays.copyOf(result, count);
+	}
+}
@@ -0,0 +1,38 @@
+package sql;
+
+import java.util.ArrayList;
+
+/*
+ * Predicate which could not be bound (unknown column or incomparable operands)
+ * Its error is reported only when a row reaches it, so an operand skipped by short circuit
+ * evaluation does not fail the statement (see BooleanExpression.bindLenient).
+ */
+class BoundFailure extends BoundNode {
+	final MyException error;
+
+	BoundFailure(MyException error) {
+		this.error = error;
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		throw new Failure(error);
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		throw new Failure(error);
+	}
+
+	// Carries error out of evaluate, which has no checked exceptions
+	static class Failure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		final MyException error;
+
+		Failure(MyException error) {
+			super(null, null, false, false);
+			this.error = error;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package sql;
+
+import java.util.ArrayList;
+
+/*
+ * Node of a WHERE clause bound to one schema (see BooleanExpression.bind)
+ * Column references are already resolved to indexes, so evaluation never looks at names.
+ */
+public abstract class BoundNode {
+	// Evaluate for one record (1: true, 0: unknown, -1: false)
+	public abstract int evaluate(ArrayList<Value> rec);
+
+	// Evaluate for one row of a columnar table with the same schema
+	public abstract int evaluate(ColumnarTable t, int row);
+
+	// Bitmaps for rows [from, from + count) of a columnar table, at most one batch (see BatchFilter)
+	void evaluate(ColumnarTable t, int from, int count, long[] bits, int offset) {
+		BatchFilter.evaluateRows(this, t, from, count, bits, offset);
+	}
+}
@@ -0,0 +1,28 @@
+package sql;
+
+import java.util.ArrayList;
+
+// Negation of a bound node
+class BoundNot extends BoundNode {
+	final BoundNode b;
+
+	BoundNot(BoundNode b) {
+		this.b = b;
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		return MyCalc.not(b.evaluate(rec));
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		return MyCalc.not(b.evaluate(t, row));
+	}
+
+	@Override
+	void evaluate(ColumnarTable t, int from, int count, long[] bits, int offset) {
+		b.evaluate(t, from, count, bits, offset);
+		BatchFilter.not(count, bits, offset);
+	}
+}
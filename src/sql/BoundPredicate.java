@@ -0,0 +1,414 @@
+package sql;
+
+import java.util.ArrayList;
+
+/*
+ * Predicate bound to a schema
+ * Each operand is either a constant or the index of a column, and both operands have the same type.
+ *
+ * of() returns a subclass specialized for the operand kinds and the type, which reads its
+ * column straight from the row and turns the comparison into one of three precomputed results.
+ * This class itself is the general form, used for predicates without a column.
+ * No evaluation allocates or changes anything but immutable caches, so bound trees can be shared.
+ */
+public class BoundPredicate extends BoundNode {
+	final Comparator op;
+	final int[] index;	// column index, -1 for a constant
+	final Value[] constant;
+	final DataType type;	// type of operand 0
+	// Result for operand 0 less than, equal to and greater than operand 1
+	final int ifLess, ifEqual, ifGreater;
+	// Constants as stored in a columnar table (INT or DATE, not null)
+	private final int[] constantInt = new int[2];
+
+	BoundPredicate(Comparator op, int[] index, Value[] constant, DataType type) {
+		this.op = op;
+		this.index = index;
+		this.constant = constant;
+		this.type = type;
+		ifLess = (op == Comparator.LT || op == Comparator.LTE || op == Comparator.NEQ) ? 1 : -1;
+		ifEqual = (op == Comparator.EQ || op == Comparator.LTE || op == Comparator.GTE) ? 1 : -1;
+		ifGreater = (op == Comparator.GT || op == Comparator.GTE || op == Comparator.NEQ) ? 1 : -1;
+		for (int i = 0; i < 2; i++) {
+			Value c = constant[i];
+			if (c != null && !c.isNull() && c.type != DataType.TYPE_CHAR) {
+				constantInt[i] = ColumnarTable.intValue(c);
+			}
+		}
+	}
+
+	// Specialized predicate for the operands
+	static BoundPredicate of(Comparator op, int[] index, Value[] constant, DataType type) {
+		if (op == Comparator.IN || op == Comparator.INN) {
+			if (index[0] >= 0) {
+				return new NullCheckPredicate(op, index, constant, type);
+			}
+			return new BoundPredicate(op, index, constant, type);
+		}
+
+		if (index[0] >= 0 && index[1] >= 0) {
+			switch (type) {
+			case TYPE_INT:
+				return new IntColumnsPredicate(op, index, constant, type);
+			case TYPE_DATE:
+				return new DateColumnsPredicate(op, index, constant, type);
+			default:
+				return new CharColumnsPredicate(op, index, constant, type);
+			}
+		}
+
+		int c = (index[0] >= 0) ? 1 : 0;	// constant operand
+		if (index[1 - c] < 0 || constant[c].isNull()) {
+			return new BoundPredicate(op, index, constant, type);
+		}
+		switch (type) {
+		case TYPE_INT:
+			return new IntConstantPredicate(op, index, constant, type);
+		case TYPE_DATE:
+			return new DateConstantPredicate(op, index, constant, type);
+		default:
+			return new CharConstantPredicate(op, index, constant, type);
+		}
+	}
+
+	private Value operand(int i, ArrayList<Value> rec) {
+		return (index[i] < 0) ? constant[i] : rec.get(index[i]);
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		Value v0 = operand(0, rec);
+
+		if (op == Comparator.IN) {
+			return v0.isNull() ? 1 : -1;
+		}
+		if (op == Comparator.INN) {
+			return v0.isNull() ? -1 : 1;
+		}
+
+		Value v1 = operand(1, rec);
+		if (v0.isNull() || v1.isNull()) {
+			return 0;
+		}
+
+		return test(v0.compareTo(v1));
+	}
+
+	private boolean isNull(int i, ColumnarTable t, int row) {
+		return (index[i] < 0) ? constant[i].isNull() : t.isNull(index[i], row);
+	}
+
+	private int intOperand(int i, ColumnarTable t, int row) {
+		return (index[i] < 0) ? constantInt[i] : t.getInt(index[i], row);
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		if (op == Comparator.IN) {
+			return isNull(0, t, row) ? 1 : -1;
+		}
+		if (op == Comparator.INN) {
+			return isNull(0, t, row) ? -1 : 1;
+		}
+
+		if (isNull(0, t, row) || isNull(1, t, row)) {
+			return 0;
+		}
+
+		if (type != DataType.TYPE_CHAR) {
+			return test(Integer.compare(intOperand(0, t, row), intOperand(1, t, row)));
+		}
+		if (index[0] >= 0 && index[1] >= 0) {
+			return test(t.compareChars(index[0], index[1], row));
+		}
+		if (index[0] >= 0) {
+			return test(t.compareChars(index[0], row, constant[1].strVal));
+		}
+		if (index[1] >= 0) {
+			return test(-t.compareChars(index[1], row, constant[0].strVal));
+		}
+		return test(constant[0].compareTo(constant[1]));
+	}
+
+	// Result for the sign of operand 0 - operand 1
+	final int test(int diff) {
+		return (diff < 0) ? ifLess : ((diff == 0) ? ifEqual : ifGreater);
+	}
+}
+
+// column IS [NOT] NULL
+final class NullCheckPredicate extends BoundPredicate {
+	private final int column;
+	private final int ifNull, ifNotNull;
+
+	NullCheckPredicate(Comparator op, int[] index, Value[] constant, DataType type) {
+		super(op, index, constant, type);
+		column = index[0];
+		ifNull = (op == Comparator.IN) ? 1 : -1;
+		ifNotNull = -ifNull;
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		return rec.get(column).isNull() ? ifNull : ifNotNull;
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		return t.isNull(column, row) ? ifNull : ifNotNull;
+	}
+
+	@Override
+	void evaluate(ColumnarTable t, int from, int count, long[] bits, int offset) {
+		BatchFilter.nullCheck(t, column, ifNull, from, count, bits, offset);
+	}
+}
+
+/*
+ * INT column compared with a non-null constant
+ * With the constant on the left, the results for less and greater are swapped so the column is always compared to the constant.
+ */
+final class IntConstantPredicate extends BoundPredicate {
+	private final int column;
+	private final int value;
+	private final int ifColumnLess, ifColumnGreater;
+
+	IntConstantPredicate(Comparator op, int[] index, Value[] constant, DataType type) {
+		super(op, index, constant, type);
+		boolean columnFirst = index[0] >= 0;
+		column = columnFirst ? index[0] : index[1];
+		value = (columnFirst ? constant[1] : constant[0]).intVal;
+		ifColumnLess = columnFirst ? ifLess : ifGreater;
+		ifColumnGreater = columnFirst ? ifGreater : ifLess;
+	}
+
+	private int result(int x) {
+		return (x < value) ? ifColumnLess : ((x == value) ? ifEqual : ifColumnGreater);
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		Integer x = rec.get(column).intVal;
+		return (x == null) ? 0 : result(x);
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		return t.isNull(column, row) ? 0 : result(t.getInt(column, row));
+	}
+
+	@Override
+	void evaluate(ColumnarTable t, int from, int count, long[] bits, int offset) {
+		BatchFilter.compare(t, column, value, ifColumnLess, ifEqual, ifColumnGreater, from, count, bits, offset);
+	}
+}
+
+// DATE column compared with a non-null constant, as yyyymmdd integers (see IntConstantPredicate)
+final class DateConstantPredicate extends BoundPredicate {
+	private final int column;
+	private final int value;
+	private final int ifColumnLess, ifColumnGreater;
+
+	DateConstantPredicate(Comparator op, int[] index, Value[] constant, DataType type) {
+		super(op, index, constant, type);
+		boolean columnFirst = index[0] >= 0;
+		column = columnFirst ? index[0] : index[1];
+		value = (columnFirst ? constant[1] : constant[0]).dateVal.getValue();
+		ifColumnLess = columnFirst ? ifLess : ifGreater;
+		ifColumnGreater = columnFirst ? ifGreater : ifLess;
+	}
+
+	private int result(int x) {
+		return (x < value) ? ifColumnLess : ((x == value) ? ifEqual : ifColumnGreater);
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		Value v = rec.get(column);
+		return v.isNull() ? 0 : result(v.dateVal.getValue());
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		return t.isNull(column, row) ? 0 : result(t.getInt(column, row));
+	}
+
+	@Override
+	void evaluate(ColumnarTable t, int from, int count, long[] bits, int offset) {
+		BatchFilter.compare(t, column, value, ifColumnLess, ifEqual, ifColumnGreater, from, count, bits, offset);
+	}
+}
+
+// CHAR column compared with a non-null constant (see IntConstantPredicate)
+final class CharConstantPredicate extends BoundPredicate {
+	private final int column;
+	private final String value;
+	private final int ifColumnLess, ifColumnGreater;
+	// Constant searched in the dictionary of the last coded table it was compared with
+	private CodedConstant coded;
+
+	// Immutable, so a stale or replaced one read by another thread is still consistent
+	private static class CodedConstant {
+		final ColumnarTable table;
+		final int code;	// see ColumnarTable.searchCode
+
+		CodedConstant(ColumnarTable table, int code) {
+			this.table = table;
+			this.code = code;
+		}
+	}
+
+	CharConstantPredicate(Comparator op, int[] index, Value[] constant, DataType type) {
+		super(op, index, constant, type);
+		boolean columnFirst = index[0] >= 0;
+		column = columnFirst ? index[0] : index[1];
+		value = (columnFirst ? constant[1] : constant[0]).strVal;
+		ifColumnLess = columnFirst ? ifLess : ifGreater;
+		ifColumnGreater = columnFirst ? ifGreater : ifLess;
+	}
+
+	private int result(int diff) {
+		return (diff < 0) ? ifColumnLess : ((diff == 0) ? ifEqual : ifColumnGreater);
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		Value v = rec.get(column);
+		if (v.isNull()) {
+			return 0;
+		}
+		return (v.strVal == value) ? ifEqual : result(v.strVal.compareTo(value));
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		if (t.isNull(column, row)) {
+			return 0;
+		}
+		if (!t.isCoded(column)) {
+			return result(t.compareChars(column, row, value));
+		}
+		return result(2 * t.getInt(column, row) - codeIn(t));
+	}
+
+	// Constant as searched in the dictionary of coded column of t
+	private int codeIn(ColumnarTable t) {
+		CodedConstant c = coded;
+		if (c == null || c.table != t) {
+			c = new CodedConstant(t, t.searchCode(column, value));
+			coded = c;
+		}
+		return c.code;
+	}
+
+	@Override
+	void evaluate(ColumnarTable t, int from, int count, long[] bits, int offset) {
+		if (!t.isCoded(column)) {
+			BatchFilter.evaluateRows(this, t, from, count, bits, offset);
+			return;
+		}
+
+		// 2 * code < searched code exactly if code < half (rounded up), equal only for an even one
+		int code = codeIn(t);
+		int half = (code + 1) >> 1;
+		int ifHalf = ((code & 1) == 0) ? ifEqual : ifColumnGreater;
+		BatchFilter.compare(t, column, half, ifColumnLess, ifHalf, ifColumnGreater, from, count, bits, offset);
+	}
+}
+
+// Two INT columns
+final class IntColumnsPredicate extends BoundPredicate {
+	private final int column0, column1;
+
+	IntColumnsPredicate(Comparator op, int[] index, Value[] constant, DataType type) {
+		super(op, index, constant, type);
+		column0 = index[0];
+		column1 = index[1];
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		Integer x = rec.get(column0).intVal;
+		Integer y = rec.get(column1).intVal;
+		if (x == null || y == null) {
+			return 0;
+		}
+		return test(Integer.compare(x, y));
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		if (t.isNull(column0, row) || t.isNull(column1, row)) {
+			return 0;
+		}
+		return test(Integer.compare(t.getInt(column0, row), t.getInt(column1, row)));
+	}
+
+	@Override
+	void evaluate(ColumnarTable t, int from, int count, long[] bits, int offset) {
+		BatchFilter.compareColumns(t, column0, column1, ifLess, ifEqual, ifGreater, from, count, bits, offset);
+	}
+}
+
+// Two DATE columns
+final class DateColumnsPredicate extends BoundPredicate {
+	private final int column0, column1;
+
+	DateColumnsPredicate(Comparator op, int[] index, Value[] constant, DataType type) {
+		super(op, index, constant, type);
+		column0 = index[0];
+		column1 = index[1];
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		Value v0 = rec.get(column0);
+		Value v1 = rec.get(column1);
+		if (v0.isNull() || v1.isNull()) {
+			return 0;
+		}
+		return test(Integer.compare(v0.dateVal.getValue(), v1.dateVal.getValue()));
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		if (t.isNull(column0, row) || t.isNull(column1, row)) {
+			return 0;
+		}
+		return test(Integer.compare(t.getInt(column0, row), t.getInt(column1, row)));
+	}
+
+	@Override
+	void evaluate(ColumnarTable t, int from, int count, long[] bits, int offset) {
+		BatchFilter.compareColumns(t, column0, column1, ifLess, ifEqual, ifGreater, from, count, bits, offset);
+	}
+}
+
+// Two CHAR columns
+final class CharColumnsPredicate extends BoundPredicate {
+	private final int column0, column1;
+
+	CharColumnsPredicate(Comparator op, int[] index, Value[] constant, DataType type) {
+		super(op, index, constant, type);
+		column0 = index[0];
+		column1 = index[1];
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		Value v0 = rec.get(column0);
+		Value v1 = rec.get(column1);
+		if (v0.isNull() || v1.isNull()) {
+			return 0;
+		}
+		return test(v0.compareTo(v1));
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int row) {
+		if (t.isNull(column0, row) || t.isNull(column1, row)) {
+			return 0;
+		}
+		return test(t.compareChars(column0, column1, row));
+	}
+}
@@ -0,0 +1,122 @@
+package sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import com.sleepycat.je.Database;
+
+/*
+ * Order-preserving dictionaries of the CHAR columns of one relation
+ *
+ * Code i of a column is its i-th smallest value (String.compareTo order), so codes compare
+ * like the values. Only columns with few distinct values get a dictionary. A stored row
+ * writes a CHAR value as its code when the dictionary has it, otherwise as the string.
+ * Dictionaries are stored at key table + KEY_SUFFIX and rebuilt from every record, with
+ * every row written again, once too many stored values are missing from them (compaction).
+ *
+ * Entry : version, column count, per column varint (value count + 1, 0 for none) and the values
+ */
+public class CharDictionary {
+	static final String KEY_SUFFIX = "@dict";
+	// Compaction needs at least this many uncoded cells, and one for every 4 rows
+	static final int COMPACT_MIN_CELLS = 256;
+
+	private final String[][] values;	// sorted values per column, null for a column without dictionary
+
+	private CharDictionary(String[][] values) {
+		this.values = values;
+	}
+
+	static String key(String table) {
+		return table + KEY_SUFFIX;
+	}
+
+	static boolean needsCompaction(long uncodedCells, long rowCount) {
+		return uncodedCells >= COMPACT_MIN_CELLS && uncodedCells * 4 >= rowCount;
+	}
+
+	// Dictionaries of the CHAR columns of records with at most one distinct value for every 2 rows
+	static CharDictionary build(ArrayList<Attribute> schema, ArrayList<ArrayList<Value>> records) {
+		int columns = schema.size();
+		String[][] values = new String[columns][];
+		for (int c = 0; c < columns; c++) {
+			if (schema.get(c).getDataType() != DataType.TYPE_CHAR) {
+				continue;
+			}
+
+			HashSet<String> distinct = new HashSet<String>();
+			for (ArrayList<Value> rec : records) {
+				Value v = rec.get(c);
+				if (!v.isNull()) {
+					distinct.add(v.strVal);
+				}
+			}
+			if (distinct.size() * 2 <= records.size()) {
+				values[c] = distinct.toArray(new String[distinct.size()]);
+				Arrays.sort(values[c]);
+			}
+		}
+		return new CharDictionary(values);
+	}
+
+	boolean hasColumn(int col) {
+		return col < values.length && values[col] != null;
+	}
+
+	// Code of s in column col, -1 if it has none
+	int code(int col, String s) {
+		if (!hasColumn(col)) {
+			return -1;
+		}
+		int code = Arrays.binarySearch(values[col], s);
+		return (code < 0) ? -1 : code;
+	}
+
+	String value(int col, int code) {
+		return values[col][code];
+	}
+
+	byte[] encode() {
+		RecordCodec.Writer w = new RecordCodec.Writer(256);
+		w.writeByte(RecordCodec.FORMAT_VERSION);
+		w.writeVarInt(values.length);
+		for (String[] column : values) {
+			if (column == null) {
+				w.writeVarInt(0);
+				continue;
+			}
+			w.writeVarInt(column.length + 1);
+			for (String s : column) {
+				w.writeString(s);
+			}
+		}
+		return w.toByteArray();
+	}
+
+	static CharDictionary decode(byte[] data) {
+		RecordCodec.Reader r = new RecordCodec.Reader(data);
+		r.readByte();	// version
+		String[][] values = new String[r.readVarInt()][];
+		for (int c = 0; c < values.length; c++) {
+			int count = r.readVarInt() - 1;
+			if (count < 0) {
+				continue;
+			}
+			values[c] = new String[count];
+			for (int i = 0; i < count; i++) {
+				values[c][i] = r.readString();
+			}
+		}
+		return new CharDictionary(values);
+	}
+
+	// Stored dictionaries of table, null if it has none
+	static CharDictionary load(Database db, String table) {
+		byte[] data = DataManager.search(db, key(table));
+		return (data == null) ? null : decode(data);
+	}
+
+	void store(Database db, String table) {
+		DataManager.insert(db, key(table), encode());
+	}
+}
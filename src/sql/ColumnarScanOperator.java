@@ -0,0 +1,74 @@
+package sql;
+
+import java.util.ArrayList;
+
+/*
+ * Scan over the selected rows of a columnar table
+ * Returned rows are the records of the relation if it is loaded, otherwise they are made from the columns.
+ */
+public class ColumnarScanOperator implements Operator {
+	private ArrayList<Attribute> schema;
+	private ColumnarTable table;
+	private int[] selection;	// positions in table (ascending), null for every row
+	private ArrayList<ArrayList<Value>> records;	// rows of table in the same order, null if not loaded
+	private int position;
+
+	public ColumnarScanOperator(ArrayList<Attribute> schema, ColumnarTable table, int[] selection, ArrayList<ArrayList<Value>> records) {
+		this.schema = schema;
+		this.table = table;
+		this.selection = selection;
+		this.records = records;
+	}
+
+	// Number of rows returned by the scan
+	int size() {
+		return (selection == null) ? table.getRowCount() : selection.length;
+	}
+
+	// Position in table of the i-th returned row
+	int positionOf(int i) {
+		return (selection == null) ? i : selection[i];
+	}
+
+	// The i-th returned row
+	ArrayList<Value> row(int i) {
+		int pos = positionOf(i);
+		return (records == null) ? table.getRow(pos) : records.get(pos);
+	}
+
+	// Returned rows by the value of an INT or DATE column, rows with null are left out
+	IntHashIndex buildIntIndex(int column) {
+		int size = size();
+		IntHashIndex index = new IntHashIndex(size);
+		for (int i = size - 1; i >= 0; i--) {
+			int pos = positionOf(i);
+			if (!table.isNull(column, pos)) {
+				index.add(table.getInt(column, pos), i);
+			}
+		}
+		return index;
+	}
+
+	@Override
+	public void open() {
+		position = 0;
+	}
+
+	@Override
+	public ArrayList<Value> next() {
+		if (position >= size()) {
+			return null;
+		}
+		return row(position++);
+	}
+
+	@Override
+	public void close() {
+		position = size();
+	}
+
+	@Override
+	public ArrayList<Attribute> getSchema() {
+		return schema;
+	}
+}
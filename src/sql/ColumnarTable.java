@@ -0,0 +1,363 @@
+package sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import com.sleepycat.je.Database;
+
+/*
+ * Read-only column-major copy of the rows of a relation
+ *
+ * INT columns are kept in an int[] and DATE columns in an int[] of yyyymmdd (Date.getValue()).
+ * A CHAR column with few distinct values is coded when that is smaller: its sorted distinct values form an
+ * order-preserving dictionary and the int[] holds the code of each cell, so comparisons
+ * with a constant compare ints. Other CHAR columns are one char[] with the start offset
+ * of every cell. Each column has a
+ * null bitmap. Rows keep the order and the row ids of the relation they were built from.
+ * Filters and join keys read the arrays directly, Value rows are made only for returned rows.
+ */
+public class ColumnarTable {
+	private final int rowCount;
+	private final long[] rowIds;
+	private final DataType[] types;
+	private final long[][] nulls;	// bit (row % 64) of word (row / 64) is set for null
+	private final int[][] ints;	// INT, DATE and coded CHAR columns
+	private final String[][] dicts;	// coded CHAR columns, values in String.compareTo order
+	private final char[][] chars;	// other CHAR columns, cell of row r is chars[offsets[r], offsets[r + 1])
+	private final int[][] offsets;
+
+	// Heap size of one dictionary value besides its chars
+	private static final int DICT_ENTRY_SIZE = 48;
+
+	private ColumnarTable(Builder b) {
+		rowCount = b.rowCount;
+		rowIds = Arrays.copyOf(b.rowIds, rowCount);
+		types = b.types;
+		nulls = new long[types.length][];
+		ints = new int[types.length][];
+		dicts = new String[types.length][];
+		chars = new char[types.length][];
+		offsets = new int[types.length][];
+		for (int c = 0; c < types.length; c++) {
+			nulls[c] = Arrays.copyOf(b.nulls[c], (rowCount + 63) >>> 6);
+			if (types[c] != DataType.TYPE_CHAR) {
+				ints[c] = Arrays.copyOf(b.ints[c], rowCount);
+				continue;
+			}
+
+			String[] cells = b.strings[c];
+			HashMap<String, Integer> codes = new HashMap<String, Integer>();
+			boolean coded = true;	// at most one distinct value for every 2 rows, and no bigger than chars
+			long length = 0;
+			long dictSize = 0;
+			for (int row = 0; row < rowCount; row++) {
+				String s = cells[row];
+				if (s != null) {
+					length += s.length();
+					if (coded && codes.put(s, 0) == null) {
+						dictSize += DICT_ENTRY_SIZE + 2 * s.length();
+						coded = codes.size() <= rowCount / 2;
+					}
+				}
+			}
+
+			if (coded && dictSize <= 2 * length + 4) {
+				String[] dict = codes.keySet().toArray(new String[codes.size()]);
+				Arrays.sort(dict);
+				for (int i = 0; i < dict.length; i++) {
+					codes.put(dict[i], i);
+				}
+				int[] cellCodes = new int[rowCount];
+				for (int row = 0; row < rowCount; row++) {
+					if (cells[row] != null) {
+						cellCodes[row] = codes.get(cells[row]);
+					}
+				}
+				dicts[c] = dict;
+				ints[c] = cellCodes;
+				continue;
+			}
+
+			chars[c] = new char[(int) length];
+			offsets[c] = new int[rowCount + 1];
+			int start = 0;
+			for (int row = 0; row < rowCount; row++) {
+				if (cells[row] != null) {
+					cells[row].getChars(0, cells[row].length(), chars[c], start);
+					start += cells[row].length();
+				}
+				offsets[c][row + 1] = start;
+			}
+		}
+	}
+
+	// Appends rows one at a time, arrays grow by doubling and are trimmed by build()
+	static class Builder {
+		private int rowCount = 0;
+		private long[] rowIds;
+		private final DataType[] types;
+		private final long[][] nulls;
+		private final int[][] ints;
+		private final String[][] strings;
+
+		Builder(ArrayList<Attribute> schema, int capacity) {
+			capacity = Math.max(capacity, 16);
+			int columns = schema.size();
+			rowIds = new long[capacity];
+			types = new DataType[columns];
+			nulls = new long[columns][];
+			ints = new int[columns][];
+			strings = new String[columns][];
+			for (int c = 0; c < columns; c++) {
+				types[c] = schema.get(c).getDataType();
+				nulls[c] = new long[(capacity + 63) >>> 6];
+				if (types[c] == DataType.TYPE_CHAR) {
+					strings[c] = new String[capacity];
+				}
+				else {
+					ints[c] = new int[capacity];
+				}
+			}
+		}
+
+		void append(long rowId, ArrayList<Value> rec) {
+			if (rowCount == rowIds.length) {
+				grow(rowCount * 2);
+			}
+			int row = rowCount;
+			rowIds[row] = rowId;
+			for (int c = 0; c < types.length; c++) {
+				Value v = rec.get(c);
+				boolean isNull = v.isNull();
+				if (isNull) {
+					nulls[c][row >>> 6] |= 1L << row;
+				}
+
+				switch (types[c]) {
+				case TYPE_INT:
+					ints[c][row] = isNull ? 0 : v.intVal;
+					break;
+				case TYPE_DATE:
+					ints[c][row] = isNull ? 0 : v.dateVal.getValue();
+					break;
+				case TYPE_CHAR:
+					strings[c][row] = isNull ? null : v.strVal;
+					break;
+				}
+			}
+			rowCount++;
+		}
+
+		private void grow(int capacity) {
+			rowIds = Arrays.copyOf(rowIds, capacity);
+			for (int c = 0; c < types.length; c++) {
+				nulls[c] = Arrays.copyOf(nulls[c], (capacity + 63) >>> 6);
+				if (types[c] == DataType.TYPE_CHAR) {
+					strings[c] = Arrays.copyOf(strings[c], capacity);
+				}
+				else {
+					ints[c] = Arrays.copyOf(ints[c], capacity);
+				}
+			}
+		}
+
+		ColumnarTable build() {
+			return new ColumnarTable(this);
+		}
+	}
+
+	// Columnar copy of records whose row ids are rowIds (same order)
+	static ColumnarTable of(ArrayList<Attribute> schema, ArrayList<ArrayList<Value>> records, ArrayList<Long> rowIds) {
+		int size = records.size();
+		Builder b = new Builder(schema, size);
+		for (int i = 0; i < size; i++) {
+			b.append(rowIds.get(i), records.get(i));
+		}
+		return b.build();
+	}
+
+	// Columnar copy of the stored rows of table, read in one pass over Berkeley DB (dict can be null)
+	static ColumnarTable load(Database db, String table, ArrayList<Attribute> schema, CharDictionary dict) {
+		String prefix = Relation.rowKeyPrefix(table);
+		Builder b = new Builder(schema, 1024);
+		PrefixCursor cursor = new PrefixCursor(db, prefix);
+		byte[] data;
+		while ((data = cursor.next()) != null) {
+			long rowId = Long.parseLong(cursor.currentKey().substring(prefix.length()), 16);
+			b.append(rowId, RecordCodec.decodeRow(data, dict));
+		}
+		return b.build();
+	}
+
+	// Integer stored for a non-null INT or DATE value
+	static int intValue(Value v) {
+		return (v.type == DataType.TYPE_DATE) ? v.dateVal.getValue() : v.intVal;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return types.length;
+	}
+
+	public DataType getType(int col) {
+		return types[col];
+	}
+
+	long getRowId(int row) {
+		return rowIds[row];
+	}
+
+	// Position of the row with this id, negative if there is none
+	int find(long rowId) {
+		return Arrays.binarySearch(rowIds, 0, rowCount, rowId);
+	}
+
+	public boolean isNull(int col, int row) {
+		return (nulls[col][row >>> 6] & (1L << row)) != 0;
+	}
+
+	// Null bits of rows [row, row + 64) of column col, bit i for row + i (0 past the last row)
+	long getNullBits(int col, int row) {
+		long[] words = nulls[col];
+		int w = row >>> 6;
+		int shift = row & 63;
+		long bits = words[w] >>> shift;
+		if (shift != 0 && w + 1 < words.length) {
+			bits |= words[w + 1] << (64 - shift);
+		}
+		return bits;
+	}
+
+	// Value of a non-null INT or DATE cell, or code of a non-null coded CHAR cell
+	public int getInt(int col, int row) {
+		return ints[col][row];
+	}
+
+	// All cells of getInt for column col (null cells hold anything), not to be modified
+	int[] getInts(int col) {
+		return ints[col];
+	}
+
+	// Check if CHAR column col is dictionary coded
+	public boolean isCoded(int col) {
+		return dicts[col] != null;
+	}
+
+	/*
+	 * Position of s among the codes of coded column col, doubled:
+	 * 2 * code compares with it like the value of the code with s
+	 */
+	public int searchCode(int col, String s) {
+		int i = Arrays.binarySearch(dicts[col], s);
+		return (i >= 0) ? 2 * i : 2 * (-i - 1) - 1;
+	}
+
+	// Value of a non-null CHAR cell
+	String getString(int col, int row) {
+		if (dicts[col] != null) {
+			return dicts[col][ints[col][row]];
+		}
+		int start = offsets[col][row];
+		return new String(chars[col], start, offsets[col][row + 1] - start);
+	}
+
+	// Same as String.compareTo between a non-null CHAR cell and s
+	public int compareChars(int col, int row, String s) {
+		if (dicts[col] != null) {
+			return dicts[col][ints[col][row]].compareTo(s);
+		}
+
+		char[] buf = chars[col];
+		int start = offsets[col][row];
+		int length = offsets[col][row + 1] - start;
+		int n = Math.min(length, s.length());
+		for (int i = 0; i < n; i++) {
+			int diff = buf[start + i] - s.charAt(i);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return length - s.length();
+	}
+
+	// Same as String.compareTo between two non-null CHAR cells of one row
+	public int compareChars(int col1, int col2, int row) {
+		if (dicts[col1] != null || dicts[col2] != null) {
+			if (dicts[col1] == null) {
+				return -compareChars(col2, row, getString(col1, row));
+			}
+			return compareChars(col1, row, getString(col2, row));
+		}
+
+		char[] buf1 = chars[col1];
+		char[] buf2 = chars[col2];
+		int start1 = offsets[col1][row];
+		int start2 = offsets[col2][row];
+		int length1 = offsets[col1][row + 1] - start1;
+		int length2 = offsets[col2][row + 1] - start2;
+		int n = Math.min(length1, length2);
+		for (int i = 0; i < n; i++) {
+			int diff = buf1[start1 + i] - buf2[start2 + i];
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return length1 - length2;
+	}
+
+	public Value getValue(int col, int row) {
+		if (isNull(col, row)) {
+			return new Value();
+		}
+		switch (types[col]) {
+		case TYPE_CHAR:
+			return new Value(getString(col, row));
+		case TYPE_DATE:
+			return new Value(Date.fromValue(ints[col][row]));
+		default:
+			return new Value(ints[col][row]);
+		}
+	}
+
+	// Row as a list of values, made on every call
+	public ArrayList<Value> getRow(int row) {
+		ArrayList<Value> rec = new ArrayList<Value>(types.length);
+		for (int c = 0; c < types.length; c++) {
+			rec.add(getValue(c, row));
+		}
+		return rec;
+	}
+
+	// Heap size of the arrays
+	long estimateSize() {
+		long size = 128 + 8L * rowIds.length;
+		for (int c = 0; c < types.length; c++) {
+			size += 48 + 8L * nulls[c].length;
+			if (dicts[c] != null) {
+				size += 4L * ints[c].length;
+				for (String s : dicts[c]) {
+					size += DICT_ENTRY_SIZE + 2 * s.length();
+				}
+			}
+			else if (types[c] == DataType.TYPE_CHAR) {
+				size += 4L * offsets[c].length + 2L * chars[c].length;
+			}
+			else {
+				size += 4L * ints[c].length;
+			}
+		}
+		return size;
+	}
+
+	// Upper bound of estimateSize() computed from the declared schema
+	static long estimateSize(ArrayList<Attribute> schema, long rowCount) {
+		long rowSize = 8;
+		for (Attribute attr : schema) {
+			rowSize += (attr.getDataType() == DataType.TYPE_CHAR) ? 4 + 2 * attr.getCharLength() : 4;
+		}
+		return 128 + 56L * schema.size() + rowSize * rowCount + schema.size() * (rowCount / 8 + 8);
+	}
+}
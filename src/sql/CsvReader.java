@@ -0,0 +1,116 @@
+package sql;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/*
+ * Reads the rows of a CSV file as values for the columns of a schema (see Relation.load)
+ *
+ * One row per line, values separated by commas. A value may be double quoted, with "" for a
+ * quote inside it, but may not span lines. An empty unquoted value or NULL is null.
+ * INT values are integers and DATE values yyyy-mm-dd, CHAR values are taken as they are.
+ * Blank lines are skipped.
+ */
+public class CsvReader {
+	private static final Pattern DATE_FORMAT = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+	private final BufferedReader in;
+	private final ArrayList<Attribute> schema;
+	private int line = 0;
+
+	public CsvReader(BufferedReader in, ArrayList<Attribute> schema) {
+		this.in = in;
+		this.schema = schema;
+	}
+
+	// Number of the last line read, from 1
+	public int getLine() {
+		return line;
+	}
+
+	// Values of the next row, null at the end of the file
+	public ArrayList<Value> next() throws IOException, MyException {
+		String text;
+		do {
+			text = in.readLine();
+			if (text == null) {
+				return null;
+			}
+			line++;
+		} while (text.trim().length() == 0);
+
+		ArrayList<Value> values = new ArrayList<Value>(schema.size());
+		StringBuilder field = new StringBuilder();
+		int length = text.length();
+		int pos = 0;
+		while (true) {
+			field.setLength(0);
+			boolean quoted = pos < length && text.charAt(pos) == '"';
+			if (quoted) {
+				pos = readQuoted(text, pos + 1, field);
+				if (pos < length && text.charAt(pos) != ',') {
+					throw new MyException(MsgType.LoadFormatError);
+				}
+			}
+			else {
+				int end = text.indexOf(',', pos);
+				end = (end < 0) ? length : end;
+				field.append(text, pos, end);
+				pos = end;
+			}
+
+			if (values.size() == schema.size()) {
+				throw new MyException(MsgType.InsertTypeMismatchError);
+			}
+			values.add(toValue(field.toString(), quoted, schema.get(values.size()).getDataType()));
+
+			if (pos >= length) {
+				return values;
+			}
+			pos++;	// comma
+		}
+	}
+
+	// Append the quoted value starting after its opening quote, return the position after its closing quote
+	private static int readQuoted(String text, int pos, StringBuilder field) throws MyException {
+		int length = text.length();
+		while (pos < length) {
+			char c = text.charAt(pos++);
+			if (c != '"') {
+				field.append(c);
+			}
+			else if (pos < length && text.charAt(pos) == '"') {
+				field.append('"');
+				pos++;
+			}
+			else {
+				return pos;
+			}
+		}
+		throw new MyException(MsgType.LoadFormatError);
+	}
+
+	private static Value toValue(String field, boolean quoted, DataType type) throws MyException {
+		if (!quoted && (field.length() == 0 || field.equalsIgnoreCase("null"))) {
+			return new Value();
+		}
+
+		switch (type) {
+		case TYPE_INT:
+			try {
+				return new Value(Integer.parseInt(field.trim()));
+			} catch (NumberFormatException e) {
+				throw new MyException(MsgType.InsertTypeMismatchError);
+			}
+		case TYPE_DATE:
+			if (!DATE_FORMAT.matcher(field.trim()).matches()) {
+				throw new MyException(MsgType.InsertTypeMismatchError);
+			}
+			return new Value(new Date(field.trim()));
+		default:
+			return new Value(field);
+		}
+	}
+}
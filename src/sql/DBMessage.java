@@ -25,11 +25,39 @@ public class DBMessage {
 		count2 = cnt2;
 	}
 
+	public DBMessage(MsgType t, String id, int cnt1, int cnt2) {
+		type = t;
+		identifier = id;
+		count = cnt1;
+		count2 = cnt2;
+	}
+
 	public MsgType type;
 	public String identifier;
 	public int count;
 	public int count2;
 
+	// Check if the statement failed, so that a script can stop there
+	public boolean isError() {
+		switch (type) {
+		case NoMessage:
+		case CreateTableSuccess:
+		case DropSuccess:
+		case ShowTablesNoTable:
+		case InsertResult:
+		case InsertRowsResult:
+		case LoadResult:
+		case DeleteResult:
+		case CreateIndexSuccess:
+		case DropIndexSuccess:
+		case DurabilitySet:
+		case FormatSet:
+			return false;
+		default:
+			return true;
+		}
+	}
+
 	private String DeleteReferentialIntegrityPassed() {
 		if (count2 == 0) return "";
 		else return "\n" + count2 + " row(s) are not deleted due to referential integrity";
@@ -90,6 +118,18 @@ public class DBMessage {
 			return "Insertion has failed: '" + identifier + "' does not exist";
 		case InsertColumnNonNullableError:
 			return "Insertion has failed: '" + identifier + "' is not nullable";
+		case InsertRowsResult:
+			return count + " row(s) are inserted";
+
+		// Load
+		case LoadResult:
+			return count + " row(s) are loaded";
+		case LoadFileError:
+			return "Load has failed: cannot read '" + identifier + "'";
+		case LoadFormatError:
+			return "Quoted value is malformed";
+		case LoadLineError:
+			return "Load has failed at line " + count + ": " + identifier + "\n" + count2 + " row(s) are loaded";
 
 		// Delete
 		case DeleteResult:
@@ -100,6 +140,8 @@ public class DBMessage {
 			return "Selection has failed: '" + identifier + "' does not exist";
 		case SelectColumnResolveError:
 			return "Selection has failed: fail to resolve '" + identifier + "'";
+		case SelectSpillError:
+			return "Selection has failed: cannot write the result to a temporary file (" + identifier + ")";
 			
 		// Where
 		case WhereIncomparableError:
@@ -111,6 +153,36 @@ public class DBMessage {
 		case WhereAmbiguousReference:
 			return "Where clause contains ambiguous reference";
 
+		// Create Index
+		case CreateIndexSuccess:
+			return "\'" + identifier + "\' index is created";
+		case IndexExistenceError:
+			return "Create index has failed: index with the same name already exists";
+		case IndexColumnExistenceError:
+			return "Create index has failed: \'" + identifier + "\' does not exist";
+
+		// Drop Index
+		case DropIndexSuccess:
+			return "\'" + identifier + "\' index is dropped";
+		case NoSuchIndex:
+			return "No such index";
+
+		// Transaction
+		case TransactionAborted:
+			return "Transaction has failed: the statement is rolled back";
+		case DurabilitySet:
+			return "Durability is set to " + identifier;
+		case DurabilityValueError:
+			return "Setting durability has failed: '" + identifier + "' is not one of sync, write_no_sync, no_sync";
+		case DurabilityNotTransactional:
+			return "Setting durability has failed: it needs --transactional";
+
+		// Output format
+		case FormatSet:
+			return "Output format is set to " + identifier;
+		case FormatValueError:
+			return "Setting format has failed: '" + identifier + "' is not one of box [exact|declared|sample], csv, tsv, json";
+
 		default:
 			return "Not Implemented";
 			 
@@ -1,13 +1,165 @@
 package sql;
 
 import java.io.*;
+import java.util.ArrayList;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.Environment;
 import com.sleepycat.je.LockMode;
 import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
 
+/*
+ * Key-value access to Berkeley DB databases
+ *
+ * In transactional mode (see setTransactional) every operation of a thread between begin() and
+ * commit() runs in one transaction, so a statement with its cascading writes is atomic.
+ * Operations which fail only mark the transaction, which commit() then aborts.
+ */
 public class DataManager {
+	private static volatile GroupCommitter committer;	// null unless transactional
+
+	// Transaction of the statement running on a thread
+	private static class StatementTransaction {
+		final Environment env;
+		final Transaction txn;
+		boolean wrote = false;
+		boolean failed = false;
+
+		StatementTransaction(Environment env) {
+			this.env = env;
+			txn = env.beginTransaction(null, null);
+		}
+	}
+
+	private static final ThreadLocal<StatementTransaction> current = new ThreadLocal<StatementTransaction>();
+
+	// Durability of the commits of the session running on a thread
+	private static final ThreadLocal<Durability.SyncPolicy> durability = new ThreadLocal<Durability.SyncPolicy>() {
+		@Override
+		protected Durability.SyncPolicy initialValue() {
+			return Durability.SyncPolicy.SYNC;
+		}
+	};
+
+	// Run statements in transactions of env, which must be opened as transactional
+	public static void setTransactional(Environment env) {
+		committer = new GroupCommitter(env);
+	}
+
+	public static boolean isTransactional() {
+		return committer != null;
+	}
+
+	public static GroupCommitter getCommitter() {
+		return committer;
+	}
+
+	public static void setDurability(Durability.SyncPolicy policy) {
+		durability.set(policy);
+	}
+
+	public static Durability.SyncPolicy getDurability() {
+		return durability.get();
+	}
+
+	// Start the transaction of the statement on this thread, nothing if not transactional or already started
+	public static void begin(Environment env) {
+		if (committer != null && current.get() == null) {
+			current.set(new StatementTransaction(env));
+		}
+	}
+
+	// Commit the transaction of this thread, or abort it if an operation failed; false if aborted
+	public static boolean commit() {
+		StatementTransaction st = current.get();
+		if (st == null) {
+			return true;
+		}
+		current.remove();
+		if (st.failed) {
+			abort(st);
+			return false;
+		}
+
+		try {
+			if (st.wrote) {
+				committer.commit(st.txn, getDurability());
+			}
+			else {
+				st.txn.commit(Durability.COMMIT_NO_SYNC);	// nothing to make durable
+			}
+			return true;
+		} catch (DatabaseException e) {
+			e.printStackTrace();
+			abort(st);
+			return false;
+		}
+	}
+
+	// Commit the work so far and go on in a new transaction, for statements too long for one; false if aborted
+	public static boolean checkpoint() {
+		StatementTransaction st = current.get();
+		if (st == null) {
+			return true;
+		}
+		boolean committed = commit();
+		begin(st.env);
+		return committed;
+	}
+
+	// Abort the transaction of this thread if it is still open
+	public static void end() {
+		StatementTransaction st = current.get();
+		if (st != null) {
+			current.remove();
+			abort(st);
+		}
+	}
+
+	// Forget the transaction and durability of the session which ran on this thread
+	public static void endSession() {
+		end();
+		durability.remove();
+	}
+
+	// Relations in the cache may hold changes of the aborted transaction, so they are all dropped
+	private static void abort(StatementTransaction st) {
+		try {
+			st.txn.abort();
+		} catch (DatabaseException e) {
+			e.printStackTrace();
+		}
+		Relation.getCache().clear();
+		SnapshotManager.discardCopies();
+	}
+
+	static Transaction readTransaction() {
+		StatementTransaction st = current.get();
+		return (st == null) ? null : st.txn;
+	}
+
+	private static Transaction writeTransaction() {
+		StatementTransaction st = current.get();
+		if (st == null) {
+			return null;
+		}
+		st.wrote = true;
+		return st.txn;
+	}
+
+	// Report a failed operation, the transaction of this thread can only be aborted then
+	private static void fail(Exception e) {
+		e.printStackTrace();
+		StatementTransaction st = current.get();
+		if (st != null) {
+			st.failed = true;
+		}
+	}
+
 	// Serialize object
 	public static <T extends Serializable> byte[] serialize(T obj) {
 		byte[] data = null;
@@ -24,7 +176,7 @@ public class DataManager {
 			byteOut.close();
 			objOut.close();
 		} catch (Exception e) {
-			e.printStackTrace();
+			fail(e);
 		}
 		return data;
 	}
@@ -45,7 +197,7 @@ public class DataManager {
 				byteIn.close();
 				objIn.close();
 			} catch (Exception e) {
-				e.printStackTrace();
+				fail(e);
 			}
 		}
 		return retobj;
@@ -55,12 +207,12 @@ public class DataManager {
 	public static void insert(Database myDatabase, String key, byte[] data) {
 		Cursor cursor = null;
 		try {
-			cursor = myDatabase.openCursor(null, null);
+			cursor = myDatabase.openCursor(writeTransaction(), null);
 			DatabaseEntry db_key = new DatabaseEntry(key.getBytes("UTF-8"));
 			DatabaseEntry db_data = new DatabaseEntry(data);
 			cursor.put(db_key, db_data);
 		} catch (Exception e) {
-			e.printStackTrace();
+			fail(e);
 		}
 		cursor.close();
 	}
@@ -69,7 +221,7 @@ public class DataManager {
 	public static void replace(Database myDatabase, String key, byte[] newData) {
 		Cursor cursor = null;
 		try {
-			cursor = myDatabase.openCursor(null, null);
+			cursor = myDatabase.openCursor(writeTransaction(), null);
 			DatabaseEntry db_key = new DatabaseEntry(key.getBytes("UTF-8"));
 			DatabaseEntry db_value = new DatabaseEntry();
 			DatabaseEntry new_value;
@@ -78,7 +230,7 @@ public class DataManager {
 				cursor.putCurrent(new_value);
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
+			fail(e);
 		}
 		cursor.close();
 	}
@@ -88,31 +240,177 @@ public class DataManager {
 		Cursor cursor = null;
 		byte[] value = null;
 		try {
-			cursor = myDatabase.openCursor(null, null);
+			cursor = myDatabase.openCursor(readTransaction(), null);
 			DatabaseEntry db_key = new DatabaseEntry(key.getBytes("UTF-8"));
 			DatabaseEntry db_value = new DatabaseEntry();
 			if (cursor.getSearchKey(db_key, db_value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 				value = db_value.getData();
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
+			fail(e);
 		}
 		cursor.close();
 		return value;
 	}
 
+	// Get every key-value pair whose key starts with prefix, in key order
+	public static void searchPrefix(Database myDatabase, String prefix, ArrayList<String> keys, ArrayList<byte[]> values) {
+		Cursor cursor = null;
+		try {
+			cursor = myDatabase.openCursor(readTransaction(), null);
+			DatabaseEntry db_key = new DatabaseEntry(prefix.getBytes("UTF-8"));
+			DatabaseEntry db_value = new DatabaseEntry();
+			OperationStatus status = cursor.getSearchKeyRange(db_key, db_value, LockMode.DEFAULT);
+			while (status == OperationStatus.SUCCESS) {
+				String key = new String(db_key.getData(), "UTF-8");
+				if (!key.startsWith(prefix)) {
+					break;
+				}
+				keys.add(key);
+				values.add(db_value.getData());
+				status = cursor.getNext(db_key, db_value, LockMode.DEFAULT);
+			}
+		} catch (Exception e) {
+			fail(e);
+		}
+		cursor.close();
+	}
+
+	// Check if there is a key which starts with prefix
+	public static boolean containsPrefix(Database myDatabase, String prefix) {
+		Cursor cursor = null;
+		boolean found = false;
+		try {
+			cursor = myDatabase.openCursor(readTransaction(), null);
+			DatabaseEntry db_key = new DatabaseEntry(prefix.getBytes("UTF-8"));
+			DatabaseEntry db_value = new DatabaseEntry();
+			db_value.setPartial(0, 0, true);
+			if (cursor.getSearchKeyRange(db_key, db_value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				found = new String(db_key.getData(), "UTF-8").startsWith(prefix);
+			}
+		} catch (Exception e) {
+			fail(e);
+		}
+		cursor.close();
+		return found;
+	}
+
+	// Delete every key-value pair whose key starts with prefix
+	public static void deletePrefix(Database myDatabase, String prefix) {
+		Cursor cursor = null;
+		try {
+			cursor = myDatabase.openCursor(writeTransaction(), null);
+			DatabaseEntry db_key = new DatabaseEntry(prefix.getBytes("UTF-8"));
+			DatabaseEntry db_value = new DatabaseEntry();
+			OperationStatus status = cursor.getSearchKeyRange(db_key, db_value, LockMode.DEFAULT);
+			while (status == OperationStatus.SUCCESS) {
+				String key = new String(db_key.getData(), "UTF-8");
+				if (!key.startsWith(prefix)) {
+					break;
+				}
+				cursor.delete();
+				status = cursor.getNext(db_key, db_value, LockMode.DEFAULT);
+			}
+		} catch (Exception e) {
+			fail(e);
+		}
+		cursor.close();
+	}
+
+	// Put a key-value pair with a binary key
+	public static void insert(Database myDatabase, byte[] key, byte[] data) {
+		Cursor cursor = null;
+		try {
+			cursor = myDatabase.openCursor(writeTransaction(), null);
+			cursor.put(new DatabaseEntry(key), new DatabaseEntry(data));
+		} catch (Exception e) {
+			fail(e);
+		}
+		cursor.close();
+	}
+
+	// Get byte data from a binary key
+	public static byte[] search(Database myDatabase, byte[] key) {
+		Cursor cursor = null;
+		byte[] value = null;
+		try {
+			cursor = myDatabase.openCursor(readTransaction(), null);
+			DatabaseEntry db_key = new DatabaseEntry(key);
+			DatabaseEntry db_value = new DatabaseEntry();
+			if (cursor.getSearchKey(db_key, db_value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				value = db_value.getData();
+			}
+		} catch (Exception e) {
+			fail(e);
+		}
+		cursor.close();
+		return value;
+	}
+
+	// Delete key-value pair with a binary key
+	public static void delete(Database myDatabase, byte[] key) {
+		Cursor cursor = null;
+		try {
+			cursor = myDatabase.openCursor(writeTransaction(), null);
+			DatabaseEntry db_key = new DatabaseEntry(key);
+			DatabaseEntry db_value = new DatabaseEntry();
+			db_value.setPartial(0, 0, true);
+			if (cursor.getSearchKey(db_key, db_value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				cursor.delete();
+			}
+		} catch (Exception e) {
+			fail(e);
+		}
+		cursor.close();
+	}
+
+	// Get binary keys from 'from' through every key starting with 'to' (null for no upper bound), in key order
+	public static void searchRange(Database myDatabase, byte[] from, byte[] to, ArrayList<byte[]> keys) {
+		Cursor cursor = null;
+		try {
+			cursor = myDatabase.openCursor(readTransaction(), null);
+			DatabaseEntry db_key = new DatabaseEntry(from);
+			DatabaseEntry db_value = new DatabaseEntry();
+			db_value.setPartial(0, 0, true);
+			OperationStatus status = cursor.getSearchKeyRange(db_key, db_value, LockMode.DEFAULT);
+			while (status == OperationStatus.SUCCESS) {
+				byte[] key = db_key.getData();
+				if (to != null && comparePrefix(key, to) > 0) {
+					break;
+				}
+				keys.add(key);
+				status = cursor.getNext(db_key, db_value, LockMode.DEFAULT);
+			}
+		} catch (Exception e) {
+			fail(e);
+		}
+		cursor.close();
+	}
+
+	// Compare the first bytes of key with prefix as unsigned bytes (Berkeley DB key order)
+	private static int comparePrefix(byte[] key, byte[] prefix) {
+		int length = Math.min(key.length, prefix.length);
+		for (int i = 0; i < length; i++) {
+			int diff = (key[i] & 0xFF) - (prefix[i] & 0xFF);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return (key.length < prefix.length) ? -1 : 0;
+	}
+
 	// Delete key-value pair
 	public static void delete(Database myDatabase, String key) {
 		Cursor cursor = null;
 		try {
-			cursor = myDatabase.openCursor(null, null);
+			cursor = myDatabase.openCursor(writeTransaction(), null);
 			DatabaseEntry db_key = new DatabaseEntry(key.getBytes("UTF-8"));
 			DatabaseEntry db_value = new DatabaseEntry();
 			if (cursor.getSearchKey(db_key, db_value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 				cursor.delete();
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
+			fail(e);
 		}
 		cursor.close();
 	}
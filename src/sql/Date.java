@@ -18,6 +18,17 @@ public class Date implements Comparable<Date>, Serializable {
 		date = d.date;
 	}
 	
+	private Date(int y, int m, int d) {
+		year = y;
+		month = m;
+		date = d;
+	}
+	
+	// Inverse of getValue()
+	public static Date fromValue(int value) {
+		return new Date(value / 10000, (value / 100) % 100, value % 100);
+	}
+	
 	int year;
 	int month;
 	int date;
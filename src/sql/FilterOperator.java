@@ -0,0 +1,44 @@
+package sql;
+
+import java.util.ArrayList;
+
+// Returns rows of child for which where evaluates to true
+public class FilterOperator implements Operator {
+	private Operator child;
+	private BoundExpression where;
+
+	public FilterOperator(Operator child, BooleanExpression where) throws MyException {
+		this(child, where.bind(child.getSchema()));
+	}
+
+	FilterOperator(Operator child, BoundExpression where) {
+		this.child = child;
+		this.where = where;
+	}
+
+	@Override
+	public void open() throws MyException {
+		child.open();
+	}
+
+	@Override
+	public ArrayList<Value> next() throws MyException {
+		ArrayList<Value> rec;
+		while ((rec = child.next()) != null) {
+			if (where.check(rec) == 1) {
+				return rec;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() {
+		child.close();
+	}
+
+	@Override
+	public ArrayList<Attribute> getSchema() {
+		return child.getSchema();
+	}
+}
@@ -0,0 +1,123 @@
+package sql;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.Transaction;
+
+/*
+ * Commits the transactions of concurrent statements with one log flush per group
+ *
+ * A commit is written to the log buffers without a flush (COMMIT_NO_SYNC) and takes a ticket.
+ * A committer finding no flush in progress leads one: it flushes the log once for every ticket
+ * issued so far, while commits arriving in the meantime wait and are covered by the next flush.
+ * SYNC commits wait for a flush with fsync, WRITE_NO_SYNC commits for any flush, and
+ * NO_SYNC commits do not wait at all. Waiting uses a lock rather than monitors so sessions
+ * on virtual threads release their carrier thread meanwhile.
+ */
+public class GroupCommitter {
+	private final Environment env;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition flushDone = lock.newCondition();
+	private long issued = 0;	// last ticket given to a commit
+	private long written = 0;	// last ticket written to the file system
+	private long synced = 0;	// last ticket forced to disk
+	private long syncWanted = 0;	// last ticket of a SYNC commit
+	private boolean flushing = false;
+	private long commitCount = 0;
+	private long flushCount = 0;
+
+	GroupCommitter(Environment env) {
+		this.env = env;
+	}
+
+	// Commit txn, returning once it is as durable as policy asks
+	void commit(Transaction txn, Durability.SyncPolicy policy) {
+		txn.commit(Durability.COMMIT_NO_SYNC);
+		boolean sync = policy == Durability.SyncPolicy.SYNC;
+		long ticket;
+		lock.lock();
+		try {
+			commitCount++;
+			if (policy == Durability.SyncPolicy.NO_SYNC) {
+				return;
+			}
+			ticket = ++issued;
+			if (sync) {
+				syncWanted = ticket;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		while (true) {
+			long target;
+			boolean fsync;
+			lock.lock();
+			try {
+				while (flushing && !isDone(ticket, sync)) {
+					flushDone.awaitUninterruptibly();
+				}
+				if (isDone(ticket, sync)) {
+					return;
+				}
+				flushing = true;
+				target = issued;
+				fsync = syncWanted > synced;
+			} finally {
+				lock.unlock();
+			}
+
+			boolean flushed = false;
+			try {
+				env.flushLog(fsync);
+				flushed = true;
+			} finally {
+				lock.lock();
+				try {
+					flushing = false;
+					if (flushed) {
+						flushCount++;
+						written = Math.max(written, target);
+						if (fsync) {
+							synced = Math.max(synced, target);
+						}
+					}
+					flushDone.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	private boolean isDone(long ticket, boolean sync) {
+		return (sync ? synced : written) >= ticket;
+	}
+
+	public long getCommitCount() {
+		lock.lock();
+		try {
+			return commitCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// Number of log flushes, at most one per commit
+	public long getFlushCount() {
+		lock.lock();
+		try {
+			return flushCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "commits " + getCommitCount() + ", log flushes " + getFlushCount();
+	}
+}
@@ -0,0 +1,229 @@
+package sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * Equi-join on keys1 of left = keys2 of right, rows ordered like the nested loop join
+ *
+ * Normally the right side is hashed and left rows are streamed through it.
+ * With buildLeft the left side is hashed instead, the right side is probed and
+ * matches are sorted back into left-major order, so both inputs are consumed in open().
+ * A columnar scan joined on one INT or DATE column is hashed on its int column, and only
+ * the rows that match are made.
+ */
+public class HashJoinOperator implements Operator {
+	private Operator left, right;
+	private int[] keys1, keys2;
+	private boolean buildLeft;
+	private ArrayList<Attribute> schema;
+
+	// Build right state
+	private HashMap<KeyTuple, ArrayList<ArrayList<Value>>> rightTable;
+	private ArrayList<Value> outer;
+	private ArrayList<ArrayList<Value>> matches;
+	private int matchPosition;
+	// Build right on a columnar scan
+	private ColumnarScanOperator rightColumns;
+	private IntHashIndex rightInts;
+	private int matchRow;
+
+	// Build left state
+	private ArrayList<ArrayList<Value>> result;
+	private int resultPosition;
+
+	public HashJoinOperator(Operator left, Operator right, int[] keys1, int[] keys2, boolean buildLeft) {
+		this.left = left;
+		this.right = right;
+		this.keys1 = keys1;
+		this.keys2 = keys2;
+		this.buildLeft = buildLeft;
+		schema = new ArrayList<Attribute>(left.getSchema());
+		schema.addAll(right.getSchema());
+	}
+
+	@Override
+	public void open() throws MyException {
+		if (buildLeft) {
+			openBuildLeft();
+			return;
+		}
+
+		rightColumns = intKeyed(right, keys2, left, keys1);
+		if (rightColumns != null) {
+			rightInts = rightColumns.buildIntIndex(keys2[0]);
+			left.open();
+			outer = null;
+			matchRow = -1;
+			return;
+		}
+
+		rightTable = new HashMap<KeyTuple, ArrayList<ArrayList<Value>>>();
+		right.open();
+		ArrayList<Value> rec;
+		while ((rec = right.next()) != null) {
+			KeyTuple key = KeyTuple.of(rec, keys2);
+			if (key.hasNull()) continue;
+
+			ArrayList<ArrayList<Value>> bucket = rightTable.get(key);
+			if (bucket == null) {
+				bucket = new ArrayList<ArrayList<Value>>(1);
+				rightTable.put(key, bucket);
+			}
+			bucket.add(rec);
+		}
+		right.close();
+
+		left.open();
+		outer = null;
+		matches = null;
+	}
+
+	// Columnar scan build side joined on one int column of the same type, null otherwise
+	private static ColumnarScanOperator intKeyed(Operator build, int[] buildKeys, Operator probe, int[] probeKeys) {
+		if (!(build instanceof ColumnarScanOperator) || buildKeys.length != 1) {
+			return null;
+		}
+		DataType type = build.getSchema().get(buildKeys[0]).getDataType();
+		if (type == DataType.TYPE_CHAR || type != probe.getSchema().get(probeKeys[0]).getDataType()) {
+			return null;
+		}
+		return (ColumnarScanOperator) build;
+	}
+
+	private void openBuildLeft() throws MyException {
+		ArrayList<ArrayList<Value>> leftRows = new ArrayList<ArrayList<Value>>();
+		HashMap<KeyTuple, ArrayList<Integer>> leftTable = new HashMap<KeyTuple, ArrayList<Integer>>();
+		ColumnarScanOperator leftColumns = intKeyed(left, keys1, right, keys2);
+		IntHashIndex leftInts = null;
+		ArrayList<Value> rec;
+		if (leftColumns != null) {
+			leftInts = leftColumns.buildIntIndex(keys1[0]);
+		}
+		else {
+			left.open();
+			while ((rec = left.next()) != null) {
+				KeyTuple key = KeyTuple.of(rec, keys1);
+				if (key.hasNull()) continue;
+
+				ArrayList<Integer> bucket = leftTable.get(key);
+				if (bucket == null) {
+					bucket = new ArrayList<Integer>(1);
+					leftTable.put(key, bucket);
+				}
+				bucket.add(leftRows.size());
+				leftRows.add(rec);
+			}
+			left.close();
+		}
+
+		// (left index, matched right index) pairs
+		ArrayList<ArrayList<Value>> rightRows = new ArrayList<ArrayList<Value>>();
+		long[] pairs = new long[16];
+		int count = 0;
+		right.open();
+		while ((rec = right.next()) != null) {
+			if (leftInts != null) {
+				Value v = rec.get(keys2[0]);
+				int i = v.isNull() ? -1 : leftInts.first(ColumnarTable.intValue(v));
+				if (i < 0) continue;
+
+				int j = rightRows.size();
+				rightRows.add(rec);
+				for (; i >= 0; i = leftInts.next(i)) {
+					if (count == pairs.length) {
+						pairs = Arrays.copyOf(pairs, count * 2);
+					}
+					pairs[count++] = ((long) i << 32) | j;
+				}
+				continue;
+			}
+
+			KeyTuple key = KeyTuple.of(rec, keys2);
+			if (key.hasNull()) continue;
+
+			ArrayList<Integer> bucket = leftTable.get(key);
+			if (bucket == null) continue;
+
+			int j = rightRows.size();
+			rightRows.add(rec);
+			for (int i : bucket) {
+				if (count == pairs.length) {
+					pairs = Arrays.copyOf(pairs, count * 2);
+				}
+				pairs[count++] = ((long) i << 32) | j;
+			}
+		}
+		right.close();
+		Arrays.sort(pairs, 0, count);
+
+		result = new ArrayList<ArrayList<Value>>(count);
+		for (int k = 0; k < count; k++) {
+			int i = (int) (pairs[k] >>> 32);
+			int j = (int) pairs[k];
+			ArrayList<Value> leftRow = (leftColumns != null) ? leftColumns.row(i) : leftRows.get(i);
+			result.add(NestedLoopJoinOperator.concat(leftRow, rightRows.get(j)));
+		}
+		resultPosition = 0;
+	}
+
+	@Override
+	public ArrayList<Value> next() throws MyException {
+		if (buildLeft) {
+			if (resultPosition >= result.size()) {
+				return null;
+			}
+			return result.get(resultPosition++);
+		}
+
+		if (rightInts != null) {
+			while (true) {
+				if (matchRow >= 0) {
+					int row = matchRow;
+					matchRow = rightInts.next(row);
+					return NestedLoopJoinOperator.concat(outer, rightColumns.row(row));
+				}
+
+				outer = left.next();
+				if (outer == null) {
+					return null;
+				}
+
+				Value v = outer.get(keys1[0]);
+				matchRow = v.isNull() ? -1 : rightInts.first(ColumnarTable.intValue(v));
+			}
+		}
+
+		while (true) {
+			if (matches != null && matchPosition < matches.size()) {
+				return NestedLoopJoinOperator.concat(outer, matches.get(matchPosition++));
+			}
+
+			outer = left.next();
+			if (outer == null) {
+				return null;
+			}
+
+			KeyTuple key = KeyTuple.of(outer, keys1);
+			matches = key.hasNull() ? null : rightTable.get(key);
+			matchPosition = 0;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (!buildLeft) {
+			left.close();
+		}
+		rightTable = null;
+		rightInts = null;
+		matches = null;
+		result = null;
+	}
+
+	@Override
+	public ArrayList<Attribute> getSchema() {
+		return schema;
+	}
+}
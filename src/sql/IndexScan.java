@@ -0,0 +1,198 @@
+package sql;
+
+import java.util.ArrayList;
+
+import com.sleepycat.je.Database;
+
+/*
+ * Access path through a secondary index for WHERE conjuncts 'column op constant'
+ *
+ * Equalities on a prefix of the index columns and the range bounds (<, <=, >, >=) on the
+ * next column are turned into one key range. Bounds are inclusive and other conjuncts are
+ * ignored, so rows read through the index must still be filtered with the whole condition.
+ */
+public class IndexScan {
+	private final SecondaryIndex index;
+	private final byte[] from;
+	private final byte[] to;	// every key starting with 'to' is included, null for no upper bound
+
+	private IndexScan(SecondaryIndex index, byte[] from, byte[] to) {
+		this.index = index;
+		this.from = from;
+		this.to = to;
+	}
+
+	// Comparison of one column with a constant, column on the left
+	private static class ColumnBound {
+		int column;
+		Comparator op;
+		Value constant;
+	}
+
+	public SecondaryIndex getIndex() {
+		return index;
+	}
+
+	// Row ids of candidate rows in ascending order
+	public long[] rowIds(Database db) {
+		return index.scan(db, from, to);
+	}
+
+	/*
+	 * Index of rel that matches the most conjuncts of where, null if none matches
+	 * schema: schema of rel as seen by where (possibly aliased)
+	 */
+	public static IndexScan choose(Relation rel, ArrayList<Attribute> schema, BooleanExpression where) {
+		ArrayList<SecondaryIndex> indexes = rel.getIndexes();
+		if (where == null || indexes.size() == 0) {
+			return null;
+		}
+
+		ArrayList<ColumnBound> bounds = new ArrayList<ColumnBound>();
+		for (BooleanNode node : where.conjuncts()) {
+			if (node.isPredicate()) {
+				ColumnBound b = columnBound(node.predicate, schema);
+				if (b != null) {
+					bounds.add(b);
+				}
+			}
+		}
+		if (bounds.size() == 0) {
+			return null;
+		}
+
+		IndexScan best = null;
+		int bestScore = 0;
+		for (SecondaryIndex index : indexes) {
+			int[] colIdx = rel.getColumnIndexes(index.getColumns());
+
+			// Equalities on leading columns
+			ArrayList<Value> prefix = new ArrayList<Value>();
+			while (prefix.size() < colIdx.length) {
+				Value eq = find(bounds, colIdx[prefix.size()], Comparator.EQ);
+				if (eq == null) {
+					break;
+				}
+				prefix.add(eq);
+			}
+
+			// Range on the next column
+			Value lower = null;
+			Value upper = null;
+			if (prefix.size() < colIdx.length) {
+				int column = colIdx[prefix.size()];
+				for (ColumnBound b : bounds) {
+					if (b.column != column) continue;
+					if (b.op == Comparator.GT || b.op == Comparator.GTE) {
+						if (lower == null || b.constant.compareTo(lower) > 0) lower = b.constant;
+					}
+					else if (b.op == Comparator.LT || b.op == Comparator.LTE) {
+						if (upper == null || b.constant.compareTo(upper) < 0) upper = b.constant;
+					}
+				}
+			}
+
+			int score = prefix.size() * 2 + ((lower != null || upper != null) ? 1 : 0);
+			if (score <= bestScore) {
+				continue;
+			}
+			bestScore = score;
+			best = range(index, prefix, lower, upper);
+		}
+		return best;
+	}
+
+	private static IndexScan range(SecondaryIndex index, ArrayList<Value> prefix, Value lower, Value upper) {
+		ArrayList<Value> fromValues = new ArrayList<Value>(prefix);
+		ArrayList<Value> toValues = new ArrayList<Value>(prefix);
+		byte[] from;
+		byte[] to;
+
+		if (lower != null) {
+			fromValues.add(lower);
+			from = SecondaryIndex.encode(fromValues);
+		}
+		else if (upper != null) {
+			// Nulls sort first and never satisfy a comparison
+			byte[] p = SecondaryIndex.encode(fromValues);
+			from = new byte[p.length + 1];
+			System.arraycopy(p, 0, from, 0, p.length);
+			from[p.length] = SecondaryIndex.VALUE_TAG;
+		}
+		else {
+			from = SecondaryIndex.encode(fromValues);
+		}
+
+		if (upper != null) {
+			toValues.add(upper);
+			to = SecondaryIndex.encode(toValues);
+		}
+		else if (prefix.size() > 0) {
+			to = SecondaryIndex.encode(toValues);
+		}
+		else {
+			to = null;
+		}
+		return new IndexScan(index, from, to);
+	}
+
+	private static Value find(ArrayList<ColumnBound> bounds, int column, Comparator op) {
+		for (ColumnBound b : bounds) {
+			if (b.column == column && b.op == op) {
+				return b.constant;
+			}
+		}
+		return null;
+	}
+
+	// 'column op constant' or 'constant op column' with a non-null constant of the column type
+	private static ColumnBound columnBound(Predicate p, ArrayList<Attribute> schema) {
+		BoundPredicate bp;
+		try {
+			bp = p.bind(schema);
+		} catch (MyException e) {
+			return null;
+		}
+
+		ColumnBound b = new ColumnBound();
+		if (bp.index[0] >= 0 && bp.index[1] < 0) {
+			b.column = bp.index[0];
+			b.op = bp.op;
+			b.constant = bp.constant[1];
+		}
+		else if (bp.index[0] < 0 && bp.index[1] >= 0) {
+			b.column = bp.index[1];
+			b.op = flip(bp.op);
+			b.constant = bp.constant[0];
+		}
+		else {
+			return null;
+		}
+
+		if (b.op == null || b.op == Comparator.NEQ || b.op == Comparator.IN || b.op == Comparator.INN) {
+			return null;
+		}
+		if (b.constant == null || b.constant.isNull()) {
+			return null;
+		}
+		return b;
+	}
+
+	// Operator with operands swapped, null if it is not usable for a range
+	private static Comparator flip(Comparator op) {
+		switch (op) {
+		case EQ:
+			return Comparator.EQ;
+		case LT:
+			return Comparator.GT;
+		case LTE:
+			return Comparator.GTE;
+		case GT:
+			return Comparator.LT;
+		case GTE:
+			return Comparator.LTE;
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package sql;
+
+import java.util.Arrays;
+
+/*
+ * Hash from an int key to row positions, used to join on one INT or DATE column
+ *
+ * Keys are stored with open addressing and rows with the same key are chained
+ * through next[]. Rows are added in descending position so every chain is ascending.
+ */
+public class IntHashIndex {
+	private final int[] keys;
+	private final int[] heads;	// first row of the chain of keys[slot], -1 for a free slot
+	private final int[] next;	// next row with the same key, -1 at the end of the chain
+	private final int mask;
+
+	IntHashIndex(int rowCount) {
+		int capacity = 2;
+		while (capacity < rowCount * 2) {
+			capacity <<= 1;
+		}
+		keys = new int[capacity];
+		heads = new int[capacity];
+		Arrays.fill(heads, -1);
+		next = new int[Math.max(rowCount, 1)];
+		mask = capacity - 1;
+	}
+
+	private int slotOf(int key) {
+		int h = key * 0x9E3779B9;
+		int slot = (h ^ (h >>> 16)) & mask;
+		while (heads[slot] >= 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	// Positions must be added from the last to the first
+	void add(int key, int row) {
+		int slot = slotOf(key);
+		keys[slot] = key;
+		next[row] = heads[slot];
+		heads[slot] = row;
+	}
+
+	// First row with key, -1 if there is none
+	int first(int key) {
+		return heads[slotOf(key)];
+	}
+
+	// Row after row with the same key, -1 if there is none
+	int next(int row) {
+		return next[row];
+	}
+}
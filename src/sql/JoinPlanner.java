@@ -0,0 +1,235 @@
+package sql;
+
+import java.util.ArrayList;
+import com.sleepycat.je.Database;
+
+/*
+ * Builds the operator tree which generates one big table from the FROM list of a select query
+ *
+ * Tables are joined left to right. When WHERE has a conjunct 'x = y' where x is a column
+ * of the tables joined so far and y is a column of the next table, that step becomes
+ * a hash join on those columns instead of a nested loop join.
+ * Rows come out in the same order as the nested cartesian product.
+ *
+ * Conjuncts which only reference one FROM table are pushed down and filter that table
+ * before it is joined. Conjuncts over several tables stay above the join.
+ */
+public class JoinPlanner {
+
+	// Column equality conjunct which links two FROM tables
+	private static class EquiJoin {
+		BooleanNode node;
+		int leftTable, rightTable;	// position in FROM list (leftTable < rightTable)
+		int leftColumn, rightColumn;	// index in the joined schema
+	}
+
+	/*
+	 * tables: FROM list
+	 * where: WHERE clause (can be null), every conjunct is applied somewhere in the tree
+	 */
+	public static Operator selectJoin(Database db, ArrayList<Rename> tables, BooleanExpression where) throws MyException {
+		int tableCount = tables.size();
+		ArrayList<Relation> relations = new ArrayList<Relation>();
+		ArrayList<String> aliases = new ArrayList<String>();
+		boolean emptyProduct = false;
+
+		for (Rename r : tables) {
+			Relation rel = Relation.db_searchCatalog(db, r.tableName);
+			relations.add(rel);
+			aliases.add(r.newName == null ? r.tableName : r.newName);
+			emptyProduct = emptyProduct || rel.isEmpty(db);
+		}
+
+		// Schema of the final joined relation and offset of each table in it
+		ArrayList<Attribute> schema = new ArrayList<Attribute>();
+		int[] offset = new int[tableCount + 1];
+		for (int i = 0; i < tableCount; i++) {
+			offset[i] = schema.size();
+			for (Attribute attr : relations.get(i).getSchema()) {
+				Attribute newAttr = attr.copyAttribute();
+				newAttr.setFullName(aliases.get(i));
+				schema.add(newAttr);
+			}
+		}
+		offset[tableCount] = schema.size();
+
+		// Errors are reported only if there is a row to evaluate, same as filtering the cartesian product
+		if (emptyProduct) {
+			return new ScanOperator(schema, new ArrayList<ArrayList<Value>>());
+		}
+
+		if (where != null) {
+			try {
+				where.bind(schema);
+			} catch (MyException e) {
+				return filteredProduct(db, relations, aliases, where);
+			}
+		}
+
+		ArrayList<BooleanNode> conjuncts = (where == null) ? new ArrayList<BooleanNode>() : where.conjuncts();
+		ArrayList<BooleanNode> consumed = new ArrayList<BooleanNode>();
+
+		ArrayList<ArrayList<BooleanNode>> pushed = new ArrayList<ArrayList<BooleanNode>>();
+		for (int i = 0; i < tableCount; i++) {
+			pushed.add(new ArrayList<BooleanNode>());
+		}
+
+		// Predicate pushdown
+		for (BooleanNode node : conjuncts) {
+			int table = singleTableOf(node, schema, offset);
+			if (table >= 0) {
+				pushed.get(table).add(node);
+				consumed.add(node);
+			}
+		}
+
+		ArrayList<Operator> inputs = new ArrayList<Operator>();
+		for (int i = 0; i < tableCount; i++) {
+			BooleanExpression filter = BooleanExpression.conjunction(pushed.get(i));
+			inputs.add(relations.get(i).scan(db, aliases.get(i), filter));
+		}
+
+		ArrayList<EquiJoin> equiJoins = new ArrayList<EquiJoin>();
+		for (BooleanNode node : conjuncts) {
+			if (consumed.contains(node)) continue;
+
+			EquiJoin ej = resolveEquiJoin(node, schema, offset);
+			if (ej != null) {
+				equiJoins.add(ej);
+			}
+		}
+
+		Operator result = inputs.get(0);
+		long resultEstimate = relations.get(0).estimateRowCount();
+
+		for (int i = 1; i < tableCount; i++) {
+			long estimate = relations.get(i).estimateRowCount();
+			ArrayList<EquiJoin> keys = new ArrayList<EquiJoin>();
+			for (EquiJoin ej : equiJoins) {
+				if (ej.rightTable == i) {
+					keys.add(ej);
+				}
+			}
+
+			if (keys.size() == 0) {
+				result = new NestedLoopJoinOperator(result, inputs.get(i));
+				resultEstimate *= estimate;
+				continue;
+			}
+
+			// Joined schema so far is a prefix of the final schema
+			int[] keys1 = new int[keys.size()];
+			int[] keys2 = new int[keys.size()];
+			for (int k = 0; k < keys.size(); k++) {
+				keys1[k] = keys.get(k).leftColumn;
+				keys2[k] = keys.get(k).rightColumn - offset[i];
+				consumed.add(keys.get(k).node);
+			}
+			// Hash the smaller side
+			result = new HashJoinOperator(result, inputs.get(i), keys1, keys2, estimate > resultEstimate);
+			resultEstimate = Math.max(resultEstimate, estimate);
+		}
+
+		ArrayList<BooleanNode> residual = new ArrayList<BooleanNode>();
+		for (BooleanNode node : conjuncts) {
+			if (!consumed.contains(node)) {
+				residual.add(node);
+			}
+		}
+
+		BooleanExpression filter = BooleanExpression.conjunction(residual);
+		if (filter != null) {
+			result = new FilterOperator(result, filter);
+		}
+		return result;
+	}
+
+	/*
+	 * Cartesian product filtered by the whole WHERE clause, for a clause with a predicate which cannot be bound
+	 * Its error is reported only if a product row reaches that predicate, so nothing is pushed down or
+	 * turned into a join key, which could evaluate it on rows the clause as written would skip.
+	 */
+	private static Operator filteredProduct(Database db, ArrayList<Relation> relations, ArrayList<String> aliases, BooleanExpression where) {
+		Operator result = relations.get(0).scan(db, aliases.get(0));
+		for (int i = 1; i < relations.size(); i++) {
+			result = new NestedLoopJoinOperator(result, relations.get(i).scan(db, aliases.get(i)));
+		}
+		return new FilterOperator(result, where.bindLenient(result.getSchema()));
+	}
+
+	// FROM position of the only table node references, -1 if it references none or several
+	private static int singleTableOf(BooleanNode node, ArrayList<Attribute> schema, int[] offset) {
+		ArrayList<Predicate> predicates = new ArrayList<Predicate>();
+		node.collectPredicates(predicates);
+
+		int table = -1;
+		for (Predicate p : predicates) {
+			for (int i = 0; i < 2; i++) {
+				if (!p.isColumnOperand(i)) continue;
+
+				int t;
+				try {
+					t = tableOf(p.resolveIndex(i, schema), offset);
+				} catch (MyException e) {
+					return -1;
+				}
+
+				if (table >= 0 && table != t) {
+					return -1;
+				}
+				table = t;
+			}
+		}
+		return table;
+	}
+
+	// Check if node is 'x = y' on columns of two different tables with the same type
+	private static EquiJoin resolveEquiJoin(BooleanNode node, ArrayList<Attribute> schema, int[] offset) {
+		if (!node.isPredicate() || !node.predicate.isColumnEquality()) {
+			return null;
+		}
+
+		int[] column = new int[2];
+		try {
+			for (int i = 0; i < 2; i++) {
+				column[i] = node.predicate.resolveIndex(i, schema);
+			}
+		} catch (MyException e) {
+			return null;	// left for the residual filter which reports the error
+		}
+
+		if (schema.get(column[0]).getDataType() != schema.get(column[1]).getDataType()) {
+			return null;
+		}
+
+		int table0 = tableOf(column[0], offset);
+		int table1 = tableOf(column[1], offset);
+		if (table0 == table1) {
+			return null;
+		}
+
+		EquiJoin ej = new EquiJoin();
+		ej.node = node;
+		if (table0 < table1) {
+			ej.leftTable = table0;
+			ej.leftColumn = column[0];
+			ej.rightTable = table1;
+			ej.rightColumn = column[1];
+		}
+		else {
+			ej.leftTable = table1;
+			ej.leftColumn = column[1];
+			ej.rightTable = table0;
+			ej.rightColumn = column[0];
+		}
+		return ej;
+	}
+
+	private static int tableOf(int column, int[] offset) {
+		int i = 0;
+		while (column >= offset[i + 1]) {
+			i++;
+		}
+		return i;
+	}
+}
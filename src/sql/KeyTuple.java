@@ -0,0 +1,114 @@
+package sql;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+/*
+ * Hashable composite key built from column values
+ * Two keys are equal when every value has the same type and compares equal.
+ */
+public class KeyTuple {
+	private final Value[] values;
+	private final int hash;
+
+	public KeyTuple(Value[] values) {
+		this.values = values;
+		int h = 1;
+		for (Value v : values) {
+			h = 31 * h + hashValue(v);
+		}
+		hash = h;
+	}
+
+	// Key from the given columns of a record
+	public static KeyTuple of(ArrayList<Value> rec, int[] indexes) {
+		Value[] values = new Value[indexes.length];
+		for (int i = 0; i < indexes.length; i++) {
+			values[i] = rec.get(indexes[i]);
+		}
+		return new KeyTuple(values);
+	}
+
+	// Key from column-value tuples, in list order
+	public static KeyTuple of(ArrayList<ColValTuple> cvList) {
+		Value[] values = new Value[cvList.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = cvList.get(i).value;
+		}
+		return new KeyTuple(values);
+	}
+
+	// Order-preserving encoding of the values (see SecondaryIndex.writeValue), equal for equal keys
+	byte[] encode() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(values.length * 8);
+		for (Value v : values) {
+			SecondaryIndex.writeValue(out, v);
+		}
+		return out.toByteArray();
+	}
+
+	// Null never equals anything in a where clause, so such keys are never indexed or matched
+	public boolean hasNull() {
+		for (Value v : values) {
+			if (v.isNull()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int hashValue(Value v) {
+		if (v.isNull()) {
+			return 0;
+		}
+		switch (v.type) {
+		case TYPE_CHAR:
+			return v.strVal.hashCode();
+		case TYPE_DATE:
+			return v.dateVal.getValue();
+		default:
+			return v.intVal;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof KeyTuple)) {
+			return false;
+		}
+
+		KeyTuple other = (KeyTuple) obj;
+		if (hash != other.hash || values.length != other.values.length) {
+			return false;
+		}
+
+		for (int i = 0; i < values.length; i++) {
+			Value a = values[i];
+			Value b = other.values[i];
+			if (a.isNull() || b.isNull()) {
+				if (a.isNull() != b.isNull()) return false;
+				continue;
+			}
+			if (!Value.typeCheck(a, b) || a.compareTo(b) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// For debugging
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append(values[i]);
+		}
+		return sb.append(")").toString();
+	}
+}
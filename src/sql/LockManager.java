@@ -0,0 +1,166 @@
+package sql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Table locks held by the statement running on a thread until it finishes
+ *
+ * SELECT shares the lock of every table it reads. INSERT, DELETE and LOAD lock the target
+ * and every table related to it by a foreign key exclusively, since constraint checks read
+ * the parents and cascades change the children. Statements changing the schema lock the
+ * catalog exclusively, all others share it.
+ *
+ * A statement locks the catalog first and then all its tables in one call, taken in name
+ * order. CATALOG sorts before every table name, so no two statements wait for each other
+ * in a cycle. Locks are fair, a waiting writer is not overtaken by later readers.
+ */
+public class LockManager {
+	public static final String CATALOG = "--catalog";
+
+	private static final ConcurrentHashMap<String, TableLock> locks = new ConcurrentHashMap<String, TableLock>();
+
+	// Locks of the statement running on a thread, in acquisition order
+	private static final ThreadLocal<ArrayList<Lock>> held = new ThreadLocal<ArrayList<Lock>>() {
+		@Override
+		protected ArrayList<Lock> initialValue() {
+			return new ArrayList<Lock>();
+		}
+	};
+
+	private static final AtomicLong acquireCount = new AtomicLong();
+	private static final AtomicLong waitCount = new AtomicLong();
+	private static final AtomicLong waitNanos = new AtomicLong();
+	private static final AtomicLong maxWaitNanos = new AtomicLong();
+
+	private static class TableLock {
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+		final AtomicLong waitCount = new AtomicLong();
+		final AtomicLong waitNanos = new AtomicLong();
+	}
+
+	private static TableLock tableLock(String name) {
+		TableLock tl = locks.get(name);
+		if (tl == null) {
+			TableLock created = new TableLock();
+			tl = locks.putIfAbsent(name, created);
+			if (tl == null) {
+				tl = created;
+			}
+		}
+		return tl;
+	}
+
+	// Lock the catalog, exclusively to change the schema
+	public static void lockCatalog(boolean exclusive) {
+		acquire(CATALOG, exclusive);
+	}
+
+	// Lock tables read shared and tables written exclusively, a table in both is written
+	public static void lockTables(Collection<String> read, Collection<String> written) {
+		TreeMap<String, Boolean> ordered = new TreeMap<String, Boolean>();
+		for (String table : read) {
+			ordered.put(table, Boolean.FALSE);
+		}
+		for (String table : written) {
+			ordered.put(table, Boolean.TRUE);
+		}
+		for (Map.Entry<String, Boolean> e : ordered.entrySet()) {
+			acquire(e.getKey(), e.getValue().booleanValue());
+		}
+	}
+
+	private static void acquire(String name, boolean exclusive) {
+		TableLock tl = tableLock(name);
+		Lock lock = exclusive ? tl.lock.writeLock() : tl.lock.readLock();
+		acquireCount.incrementAndGet();
+		if (!lock.tryLock()) {
+			long start = System.nanoTime();
+			lock.lock();
+			long waited = System.nanoTime() - start;
+
+			waitCount.incrementAndGet();
+			waitNanos.addAndGet(waited);
+			tl.waitCount.incrementAndGet();
+			tl.waitNanos.addAndGet(waited);
+			long max = maxWaitNanos.get();
+			while (waited > max && !maxWaitNanos.compareAndSet(max, waited)) {
+				max = maxWaitNanos.get();
+			}
+		}
+		held.get().add(lock);
+	}
+
+	// Release every lock of the statement on this thread, in reverse order
+	public static void releaseAll() {
+		ArrayList<Lock> locked = held.get();
+		for (int i = locked.size() - 1; i >= 0; i--) {
+			locked.get(i).unlock();
+		}
+		locked.clear();
+	}
+
+	public static long getAcquireCount() {
+		return acquireCount.get();
+	}
+
+	// Number of lock requests which had to wait
+	public static long getWaitCount() {
+		return waitCount.get();
+	}
+
+	public static long getWaitNanos() {
+		return waitNanos.get();
+	}
+
+	public static long getMaxWaitNanos() {
+		return maxWaitNanos.get();
+	}
+
+	// Waits for the lock of one table (or CATALOG)
+	public static long getWaitCount(String name) {
+		TableLock tl = locks.get(name);
+		return (tl == null) ? 0 : tl.waitCount.get();
+	}
+
+	public static long getWaitNanos(String name) {
+		TableLock tl = locks.get(name);
+		return (tl == null) ? 0 : tl.waitNanos.get();
+	}
+
+	// One line per lock which was waited for, most waited first
+	public static String describeContention() {
+		TreeMap<Long, ArrayList<String>> byWait = new TreeMap<Long, ArrayList<String>>();
+		for (Map.Entry<String, TableLock> e : locks.entrySet()) {
+			long nanos = e.getValue().waitNanos.get();
+			if (e.getValue().waitCount.get() > 0) {
+				ArrayList<String> names = byWait.get(-nanos);
+				if (names == null) {
+					names = new ArrayList<String>();
+					byWait.put(-nanos, names);
+				}
+				names.add(e.getKey());
+			}
+		}
+
+		StringBuilder sb = new StringBuilder(summary());
+		for (ArrayList<String> names : byWait.values()) {
+			for (String name : names) {
+				sb.append("\n").append(name).append(": ").append(getWaitCount(name)).append(" wait(s), ")
+						.append(getWaitNanos(name) / 1000000).append(" ms");
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String summary() {
+		return "locks: " + acquireCount.get() + " acquired, " + waitCount.get() + " wait(s), "
+				+ waitNanos.get() / 1000000 + " ms waited, longest " + maxWaitNanos.get() / 1000000 + " ms";
+	}
+}
@@ -34,6 +34,13 @@ public enum MsgType {
 	InsertTypeMismatchError,
 	InsertColumnExistenceError,	// columnName (String)
 	InsertColumnNonNullableError,	// columnName (String)
+	InsertRowsResult,	// inserted count (int)
+
+	// Load
+	LoadResult,	// loaded count (int)
+	LoadFileError,	// file name (String)
+	LoadFormatError,
+	LoadLineError,	// error (String), line (int), loaded count (int)
 	
 	// Delete
 	DeleteResult, // deleted count (String or int)
@@ -42,10 +49,30 @@ public enum MsgType {
 	// Select
 	SelectTableExistenceError,	// tableName (String)
 	SelectColumnResolveError,	// columnName (String)
+	SelectSpillError,	// error (String)
 	
 	// Where
 	WhereIncomparableError,
 	WhereTableNotSpecified,
 	WhereColumnNotExist,
-	WhereAmbiguousReference
+	WhereAmbiguousReference,
+
+	// Create Index
+	CreateIndexSuccess,	// indexName (String)
+	IndexExistenceError,
+	IndexColumnExistenceError,	// columnName (String)
+
+	// Drop Index
+	DropIndexSuccess,	// indexName (String)
+	NoSuchIndex,
+
+	// Transaction
+	TransactionAborted,
+	DurabilitySet,	// durability (String)
+	DurabilityValueError,	// durability (String)
+	DurabilityNotTransactional,
+
+	// Output format
+	FormatSet,	// format (String)
+	FormatValueError	// format (String)
 }
\ No newline at end of file
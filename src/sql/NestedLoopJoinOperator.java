@@ -0,0 +1,64 @@
+package sql;
+
+import java.util.ArrayList;
+
+// Cartesian product, inner (right) operator is scanned again for every outer (left) row
+public class NestedLoopJoinOperator implements Operator {
+	private Operator left, right;
+	private ArrayList<Attribute> schema;
+	private ArrayList<Value> outer;
+
+	public NestedLoopJoinOperator(Operator left, Operator right) {
+		this.left = left;
+		this.right = right;
+		schema = new ArrayList<Attribute>(left.getSchema());
+		schema.addAll(right.getSchema());
+	}
+
+	@Override
+	public void open() throws MyException {
+		left.open();
+		outer = null;
+	}
+
+	@Override
+	public ArrayList<Value> next() throws MyException {
+		while (true) {
+			if (outer == null) {
+				outer = left.next();
+				if (outer == null) {
+					return null;
+				}
+				right.open();
+			}
+
+			ArrayList<Value> inner = right.next();
+			if (inner != null) {
+				return concat(outer, inner);
+			}
+			right.close();
+			outer = null;
+		}
+	}
+
+	static ArrayList<Value> concat(ArrayList<Value> rec1, ArrayList<Value> rec2) {
+		ArrayList<Value> newEntity = new ArrayList<Value>(rec1.size() + rec2.size());
+		newEntity.addAll(rec1);
+		newEntity.addAll(rec2);
+		return newEntity;
+	}
+
+	@Override
+	public void close() {
+		if (outer != null) {
+			right.close();
+			outer = null;
+		}
+		left.close();
+	}
+
+	@Override
+	public ArrayList<Attribute> getSchema() {
+		return schema;
+	}
+}
@@ -0,0 +1,20 @@
+package sql;
+
+import java.util.ArrayList;
+
+/*
+ * Pull based query operator
+ *
+ * open() prepares the operator, next() returns one row at a time (null after the last row)
+ * and close() releases its resources. An operator can be opened again after close().
+ */
+public interface Operator {
+	void open() throws MyException;
+
+	ArrayList<Value> next() throws MyException;
+
+	void close();
+
+	// Schema of rows returned by next()
+	ArrayList<Attribute> getSchema();
+}
@@ -0,0 +1,55 @@
+package sql;
+
+/*
+ * Output format of select results, chosen per session with SET FORMAT (see PrintOperator)
+ */
+public enum OutputFormat {
+	BOX,	// box table, columns as wide as their longest value (whole result held before printing)
+	BOX_DECLARED,	// box table, columns as wide as their declared type (streamed)
+	BOX_SAMPLE,	// box table, columns as wide as the longest value of the first rows (streamed)
+	CSV,	// header and rows, RFC 4180 quoting, null as an empty value
+	TSV,	// header and rows, tab, newline and backslash escaped, null as \N
+	JSON;	// one JSON object per row, keyed by column title
+
+	// Format named in SET FORMAT name [sizing], null if there is none
+	public static OutputFormat of(String name, String sizing) {
+		name = name.toLowerCase();
+		if (name.equals("box")) {
+			if (sizing == null || sizing.equalsIgnoreCase("exact")) {
+				return BOX;
+			}
+			if (sizing.equalsIgnoreCase("declared")) {
+				return BOX_DECLARED;
+			}
+			if (sizing.equalsIgnoreCase("sample")) {
+				return BOX_SAMPLE;
+			}
+			return null;
+		}
+		if (sizing != null) {
+			return null;
+		}
+		if (name.equals("csv")) {
+			return CSV;
+		}
+		if (name.equals("tsv")) {
+			return TSV;
+		}
+		if (name.equals("json")) {
+			return JSON;
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		switch (this) {
+		case BOX_DECLARED:
+			return "box declared";
+		case BOX_SAMPLE:
+			return "box sample";
+		default:
+			return name().toLowerCase();
+		}
+	}
+}
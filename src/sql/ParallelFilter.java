@@ -0,0 +1,185 @@
+package sql;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Evaluates a bound WHERE clause over large record lists or columnar tables on a ForkJoinPool
+ *
+ * Records are split into contiguous chunks which are filtered independently,
+ * then the chunk results are concatenated in chunk order so the output keeps
+ * the order of the input. Bound trees only cache immutable lookups and can be shared by workers.
+ * If evaluation fails, the failure of the earliest failing chunk is rethrown,
+ * regardless of which worker finished first.
+ */
+public class ParallelFilter {
+	public static final int DEFAULT_THRESHOLD = 100000;
+	private static final int MIN_CHUNK_SIZE = 4096;
+
+	private static int threshold = DEFAULT_THRESHOLD;
+	private static ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	// Row count from which filtering runs in parallel (0 or less disables it)
+	public static void setThreshold(int rows) {
+		threshold = rows;
+	}
+
+	public static int getThreshold() {
+		return threshold;
+	}
+
+	public static void setPool(ForkJoinPool forkJoinPool) {
+		pool = forkJoinPool;
+	}
+
+	static boolean applies(int rowCount) {
+		return threshold > 0 && rowCount >= threshold && pool.getParallelism() > 1;
+	}
+
+	private static class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final BoundNode root;
+		final ArrayList<ArrayList<Value>> records;
+		final int from;
+		final int to;
+		ArrayList<ArrayList<Value>> result;
+		RuntimeException failure;
+
+		Chunk(BoundNode root, ArrayList<ArrayList<Value>> records, int from, int to) {
+			this.root = root;
+			this.records = records;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			result = new ArrayList<ArrayList<Value>>();
+			try {
+				for (int i = from; i < to; i++) {
+					ArrayList<Value> rec = records.get(i);
+					if (root.evaluate(rec) == 1) {
+						result.add(rec);
+					}
+				}
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+	}
+
+	// Positions of the rows of one chunk of a columnar table
+	private static class SelectChunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final BoundNode root;
+		final ColumnarTable table;
+		final int from;
+		final int to;
+		int[] result;
+		int count;
+		RuntimeException failure;
+
+		SelectChunk(BoundNode root, ColumnarTable table, int from, int to) {
+			this.root = root;
+			this.table = table;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			result = new int[to - from];
+			count = 0;
+			try {
+				if (BatchFilter.isEnabled()) {
+					count = BatchFilter.select(root, table, from, to, BatchFilter.newBitmaps(root), result, 0);
+					return;
+				}
+				for (int row = from; row < to; row++) {
+					if (root.evaluate(table, row) == 1) {
+						result[count++] = row;
+					}
+				}
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+	}
+
+	private static class Split extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final ArrayList<? extends RecursiveAction> chunks;
+
+		Split(ArrayList<? extends RecursiveAction> chunks) {
+			this.chunks = chunks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(chunks);
+		}
+	}
+
+	private static int chunkSize(int size) {
+		int chunkCount = Math.max(1, Math.min(pool.getParallelism() * 4, size / MIN_CHUNK_SIZE));
+		return (size + chunkCount - 1) / chunkCount;
+	}
+
+	// Return records for which root evaluates to true, in input order
+	static ArrayList<ArrayList<Value>> filter(BoundNode root, ArrayList<ArrayList<Value>> records) {
+		int size = records.size();
+		int chunkSize = chunkSize(size);
+
+		ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+		for (int from = 0; from < size; from += chunkSize) {
+			chunks.add(new Chunk(root, records, from, Math.min(size, from + chunkSize)));
+		}
+		pool.invoke(new Split(chunks));
+
+		int resultSize = 0;
+		for (Chunk chunk : chunks) {
+			if (chunk.failure != null) {
+				throw chunk.failure;
+			}
+			resultSize += chunk.result.size();
+		}
+
+		ArrayList<ArrayList<Value>> result = new ArrayList<ArrayList<Value>>(resultSize);
+		for (Chunk chunk : chunks) {
+			result.addAll(chunk.result);
+		}
+		return result;
+	}
+
+	// Return positions of the rows of table for which root evaluates to true, ascending
+	static int[] select(BoundNode root, ColumnarTable table) {
+		int size = table.getRowCount();
+		int chunkSize = chunkSize(size);
+
+		ArrayList<SelectChunk> chunks = new ArrayList<SelectChunk>();
+		for (int from = 0; from < size; from += chunkSize) {
+			chunks.add(new SelectChunk(root, table, from, Math.min(size, from + chunkSize)));
+		}
+		pool.invoke(new Split(chunks));
+
+		int resultSize = 0;
+		for (SelectChunk chunk : chunks) {
+			if (chunk.failure != null) {
+				throw chunk.failure;
+			}
+			resultSize += chunk.count;
+		}
+
+		int[] result = new int[resultSize];
+		int position = 0;
+		for (SelectChunk chunk : chunks) {
+			System.arraycopy(chunk.result, 0, result, position, chunk.count);
+			position += chunk.count;
+		}
+		return result;
+	}
+}
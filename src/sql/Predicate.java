@@ -7,14 +7,12 @@ public class Predicate {
 	Value[] v;
 	Comparator op;
 	String[] t, c;
-	private DataType[] type;
 	
 	private Predicate(Comparator comp) {
 		op = comp;
 		v = new Value[2];
 		t = new String[2];
 		c = new String[2];
-		type = new DataType[2];
 	}
 	public Predicate(Comparator comp, String t0, String c0) {
 		this(comp);
@@ -55,113 +53,47 @@ public class Predicate {
 		return (v[i] != null);
 	}
 	
-	public int evaluate(ArrayList<Value> rec, ArrayList<Attribute> schema) throws MyException {
-		int retval = -1;
-		Value[] cp = new Value[2];
-		
-		try {
-			for (int i = 0; i < 2; i++) {
-				if (i == 1 && (op == Comparator.IN || op == Comparator.INN)) {
-					if (op == Comparator.IN) {
-						if (cp[0].isNull()) return 1;
-						else return -1;
-					}
-					else if (op == Comparator.INN) {
-						if (cp[0].isNull()) return -1;
-						else return 1;
-					}
-				}
-				if (isConst(i)) {
-					cp[i] = v[i];
-					type[i] = v[i].type;
-				}
-				else {
-					cp[i] = findValue(i, rec, schema);
-				}
-			}
-			
-			if (type[0] != type[1]) {
-				throw new MyException(MsgType.WhereIncomparableError);
+	// Resolve operands against schema (1 operand for null checks)
+	public BoundPredicate bind(ArrayList<Attribute> schema) throws MyException {
+		int operands = (op == Comparator.IN || op == Comparator.INN) ? 1 : 2;
+		int[] index = {-1, -1};
+		Value[] constant = new Value[2];
+		DataType[] type = new DataType[2];
+
+		for (int i = 0; i < operands; i++) {
+			if (isConst(i)) {
+				constant[i] = v[i];
+				type[i] = v[i].type;
 			}
-			
-			if (!Value.comparable(cp[0], cp[1])) {
-				throw new MyException(MsgType.WhereIncomparableError);
+			else {
+				index[i] = resolveIndex(i, schema);
+				type[i] = schema.get(index[i]).getDataType();
 			}
 		}
-		catch (MyException e) {
-			throw e;
-		}
 		
-		if (cp[0].isNull() || cp[1].isNull()) {
-			return 0;
+		if (operands == 2 && type[0] != type[1]) {
+			throw new MyException(MsgType.WhereIncomparableError);
 		}
 		
-		int diff = cp[0].compareTo(cp[1]);
-
-		switch(op) {
-			case EQ:
-				if (diff == 0) retval = 1;
-				break;
-			case NEQ:
-				if (diff != 0) retval = 1;
-				break;
-				
-			case GTE:
-				if (diff == 0) retval = 1;
-			case GT:
-				if (diff > 0) retval = 1;
-				break;
-				
-			case LTE:
-				if (diff == 0) retval = 1;
-			default:
-				if (diff < 0) retval = 1;
-				break;
-		}
-		
-		return retval;
+		return BoundPredicate.of(op, index, constant, type[0]);
 	}
 	
-	// Get value from rec which specified from tableName t[i] and columnName c[i]
-	private Value findValue(int i, ArrayList<Value> rec, ArrayList<Attribute> schema) throws MyException {
-		if (t[i] == null && c[i] == null) {
-			System.out.println("Fuck");
-			return new Value();
-		}
-		
-		String col = makeFullName(i);
-		int size = schema.size();
-		int index = -1;
-		boolean tableSpecified = t[i]==null? true : false;
-		
-		for(int idx = 0; idx < size; idx++) {
-			Attribute attr = schema.get(idx);
-			boolean match = attr.nameMatch(col);
-			if (match) {
-				tableSpecified = true;
-				if (index < 0) {
-					index = idx;
-				}
-				else {
-					throw new MyException(MsgType.WhereAmbiguousReference);
-				}
-			}
-			else if (t[i] != null) {
-				if(attr.getTableName().equals(t[i])) {
-					tableSpecified = true;
-				}
-			}
-		}
-		if (!tableSpecified) {
-			throw new MyException(MsgType.WhereTableNotSpecified);
-		}
-		
-		if (index < 0) {
-			throw new MyException(MsgType.WhereColumnNotExist);
+	// Check if operand i is a column reference (null checks have only one operand)
+	boolean isColumnOperand(int i) {
+		if (i == 1 && (op == Comparator.IN || op == Comparator.INN)) {
+			return false;
 		}
-		
-		type[i] = schema.get(index).getDataType();
-		return rec.get(index);
+		return !isConst(i);
+	}
+	
+	// Column-to-column equality, candidate for an equi-join
+	boolean isColumnEquality() {
+		return op == Comparator.EQ && !isConst(0) && !isConst(1);
+	}
+	
+	// Get schema index of the column specified from tableName t[i] and columnName c[i]
+	int resolveIndex(int i, ArrayList<Attribute> schema) throws MyException {
+		return Binder.resolveColumn(schema, t[i], c[i]);
 	}
 	
 	private String makeFullName(int i) {
@@ -0,0 +1,69 @@
+package sql;
+
+import java.io.UnsupportedEncodingException;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+/*
+ * Walks the values of every key starting with prefix, in key order
+ * The Berkeley DB cursor stays open between calls to next() until close().
+ */
+public class PrefixCursor {
+	private Cursor cursor;
+	private String prefix;
+	private DatabaseEntry db_key;
+	private DatabaseEntry db_value;
+	private boolean started = false;
+
+	public PrefixCursor(Database myDatabase, String prefix) {
+		this.prefix = prefix;
+		cursor = myDatabase.openCursor(DataManager.readTransaction(), null);
+		try {
+			db_key = new DatabaseEntry(prefix.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+		}
+		db_value = new DatabaseEntry();
+	}
+
+	// Value of the next key, null if there is no more key with prefix
+	public byte[] next() {
+		if (cursor == null) {
+			return null;
+		}
+
+		OperationStatus status;
+		if (!started) {
+			status = cursor.getSearchKeyRange(db_key, db_value, LockMode.DEFAULT);
+			started = true;
+		}
+		else {
+			status = cursor.getNext(db_key, db_value, LockMode.DEFAULT);
+		}
+
+		if (status != OperationStatus.SUCCESS || !currentKey().startsWith(prefix)) {
+			close();
+			return null;
+		}
+		return db_value.getData();
+	}
+
+	public String currentKey() {
+		try {
+			return new String(db_key.getData(), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+			return "";
+		}
+	}
+
+	public void close() {
+		if (cursor != null) {
+			cursor.close();
+			cursor = null;
+		}
+	}
+}
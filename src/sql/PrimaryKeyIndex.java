@@ -0,0 +1,140 @@
+package sql;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+/*
+ * Primary key index of one table, so an insert checks a key without loading the table
+ *
+ * Entries live in their own Berkeley DB database named DATABASE_PREFIX + table name. An entry
+ * key is the encoding of the key values (see KeyTuple.encode), the data is the row id as 8
+ * big-endian bytes. Keys with a null are not entered. The index of an existing table is built
+ * from its stored rows on first use and BUILT_KEY is written last, so an unfinished build is
+ * started again. Relation maintains the entries when dirty rows are written back.
+ */
+public class PrimaryKeyIndex {
+	public static final String DATABASE_PREFIX = "primary:";
+
+	// Encoded values start with a tag (see SecondaryIndex), so no entry has this key
+	private static final byte[] BUILT_KEY = { (byte) 0xFF };
+
+	// Tables whose index is known to be built, per main database
+	private static final IdentityHashMap<Database, HashSet<String>> built = new IdentityHashMap<Database, HashSet<String>>();
+
+	private Database db;
+	private String table;
+	private Database index;
+	private Transaction txn;
+
+	/*
+	 * Start building the index of table, entries are entered with add() until finish()
+	 * The build is committed on its own, so it stays valid if the statement is rolled back.
+	 */
+	PrimaryKeyIndex(Database db, String table) {
+		this.db = db;
+		this.table = table;
+		drop(db, table);
+		index = SecondaryIndex.open(db, DATABASE_PREFIX + table);
+		if (DataManager.isTransactional()) {
+			txn = db.getEnvironment().beginTransaction(null, null);
+		}
+	}
+
+	void add(KeyTuple key, long rowId) {
+		if (!key.hasNull()) {
+			index.put(txn, new DatabaseEntry(key.encode()), new DatabaseEntry(rowIdBytes(rowId)));
+		}
+	}
+
+	Database finish() {
+		index.put(txn, new DatabaseEntry(BUILT_KEY), new DatabaseEntry(new byte[0]));
+		if (txn != null) {
+			txn.commit();
+		}
+		markBuilt(db, table, true);
+		return index;
+	}
+
+	// Index of table, null if it is not built yet
+	static Database open(Database db, String table) {
+		Database index = SecondaryIndex.openExisting(db, DATABASE_PREFIX + table);
+		if (index == null) {
+			return null;
+		}
+		if (!isBuilt(db, table)) {
+			// Read outside the statement, which must not hold locks in an index that is built again
+			DatabaseEntry data = new DatabaseEntry();
+			if (index.get(null, new DatabaseEntry(BUILT_KEY), data, LockMode.READ_COMMITTED) != OperationStatus.SUCCESS) {
+				return null;
+			}
+			markBuilt(db, table, true);
+		}
+		return index;
+	}
+
+	// Remove the index of table with all entries
+	static void drop(Database db, String table) {
+		markBuilt(db, table, false);
+		SecondaryIndex.remove(db, DATABASE_PREFIX + table);
+	}
+
+	// Row id of the entry for key, -1 if there is none
+	static long find(Database index, KeyTuple key) {
+		if (key.hasNull()) {
+			return -1;
+		}
+		byte[] data = DataManager.search(index, key.encode());
+		return (data == null) ? -1 : SecondaryIndex.rowIdOf(data);
+	}
+
+	/*
+	 * Update the entry of one row, before or after is null if the row did not exist
+	 * The old entry is only removed if it is still the one of this row, because another row
+	 * written back before it may already have taken the key.
+	 */
+	static void update(Database index, KeyTuple before, KeyTuple after, long rowId) {
+		if (before != null && after != null && before.equals(after)) {
+			return;
+		}
+
+		if (before != null && find(index, before) == rowId) {
+			DataManager.delete(index, before.encode());
+		}
+		if (after != null && !after.hasNull()) {
+			DataManager.insert(index, after.encode(), rowIdBytes(rowId));
+		}
+	}
+
+	private static byte[] rowIdBytes(long rowId) {
+		byte[] data = new byte[8];
+		for (int i = 0; i < 8; i++) {
+			data[i] = (byte) (rowId >>> (56 - 8 * i));
+		}
+		return data;
+	}
+
+	private static synchronized boolean isBuilt(Database db, String table) {
+		HashSet<String> tables = built.get(db);
+		return tables != null && tables.contains(table);
+	}
+
+	private static synchronized void markBuilt(Database db, String table, boolean isBuilt) {
+		HashSet<String> tables = built.get(db);
+		if (tables == null) {
+			tables = new HashSet<String>();
+			built.put(db, tables);
+		}
+		if (isBuilt) {
+			tables.add(table);
+		}
+		else {
+			tables.remove(table);
+		}
+	}
+}
@@ -0,0 +1,393 @@
+package sql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/*
+ * Prints rows of child in an output format, through a ResultWriter
+ *
+ * Box tables make every column as wide as its longest value. BOX measures the whole result,
+ * keeping rows past BUFFER_LIMIT in a temporary file, so nothing is printed before the last row.
+ * BOX_SAMPLE measures the first SAMPLE_ROWS rows only and prints the rest as they come with those
+ * widths, a longer value widening its own row only. BOX_DECLARED sizes columns from the declared
+ * types and streams every row.
+ * The child is run only once in every format. CSV, TSV and JSON are written as rows come.
+ */
+public class PrintOperator {
+	static final int BUFFER_LIMIT = 10000;
+	static final int SAMPLE_ROWS = 1000;
+	// Longest text of an INT, a DATE and a null value
+	private static final int INT_WIDTH = 11;
+	private static final int DATE_WIDTH = 10;
+	private static final int NULL_WIDTH = 4;
+
+	private Operator child;
+	private ArrayList<String> titles;
+	private PrintStream out;
+	private OutputFormat format;
+
+	public PrintOperator(Operator child, ArrayList<String> titles, PrintStream out) {
+		this(child, titles, out, OutputFormat.BOX);
+	}
+
+	public PrintOperator(Operator child, ArrayList<String> titles, PrintStream out, OutputFormat format) {
+		this.child = child;
+		this.titles = titles;
+		this.out = out;
+		this.format = format;
+	}
+
+	public void execute() throws MyException {
+		ResultWriter w = new ResultWriter(out);
+		switch (format) {
+		case BOX:
+			printExactBox(w);
+			break;
+		case BOX_SAMPLE:
+			printStreamedBox(w, SAMPLE_ROWS);
+			break;
+		case BOX_DECLARED:
+			printStreamedBox(w, 0);
+			break;
+		default:
+			printLines(w);
+			break;
+		}
+		w.flush();
+	}
+
+	private int[] titleWidths() {
+		int[] length = new int[titles.size()];
+		for (int i = 0; i < length.length; i++) {
+			length[i] = MyCalc.max(1, titles.get(i).length());
+		}
+		return length;
+	}
+
+	private static void widen(int[] length, ArrayList<Value> rec) {
+		for (int i = 0; i < length.length; i++) {
+			length[i] = MyCalc.max(length[i], rec.get(i).getLength());
+		}
+	}
+
+	// Widths from the first sampleRows rows (from the declared types if there are none), then every row as it comes
+	private void printStreamedBox(ResultWriter w, int sampleRows) throws MyException {
+		int[] length = titleWidths();
+		ArrayList<ArrayList<Value>> sample = new ArrayList<ArrayList<Value>>();
+
+		child.open();
+		try {
+			ArrayList<Value> rec;
+			if (sampleRows == 0) {
+				ArrayList<Attribute> schema = child.getSchema();
+				for (int i = 0; i < length.length; i++) {
+					length[i] = MyCalc.max(length[i], declaredWidth(schema.get(i)));
+				}
+			}
+			while (sample.size() < sampleRows && (rec = child.next()) != null) {
+				widen(length, rec);
+				sample.add(rec);
+			}
+
+			String border = border(length);
+			printHeader(w, border, length);
+			for (ArrayList<Value> r : sample) {
+				printRow(w, r, length);
+			}
+			sample = null;
+			while ((rec = child.next()) != null) {
+				printRow(w, rec, length);
+			}
+			w.append(border).newLine();
+		} finally {
+			child.close();
+		}
+	}
+
+	// Widths from every row, rows past BUFFER_LIMIT are encoded to a temporary file until the widths are known
+	private void printExactBox(ResultWriter w) throws MyException {
+		int[] length = titleWidths();
+		ArrayList<ArrayList<Value>> buffer = new ArrayList<ArrayList<Value>>();
+		File spill = null;
+		DataOutputStream spillOut = null;
+		long spilled = 0;
+
+		try {
+			child.open();
+			try {
+				ArrayList<Value> rec;
+				while ((rec = child.next()) != null) {
+					widen(length, rec);
+					if (buffer.size() < BUFFER_LIMIT) {
+						buffer.add(rec);
+						continue;
+					}
+					if (spillOut == null) {
+						spill = File.createTempFile("sql-result", ".rows");
+						spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spill), ResultWriter.FLUSH_SIZE));
+					}
+					byte[] data = RecordCodec.encodeRow(rec);
+					spillOut.writeInt(data.length);
+					spillOut.write(data);
+					spilled++;
+				}
+			} finally {
+				child.close();
+			}
+
+			String border = border(length);
+			printHeader(w, border, length);
+			for (ArrayList<Value> r : buffer) {
+				printRow(w, r, length);
+			}
+			buffer = null;
+
+			if (spillOut != null) {
+				spillOut.close();
+				spillOut = null;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spill), ResultWriter.FLUSH_SIZE));
+				try {
+					for (long i = 0; i < spilled; i++) {
+						byte[] data = new byte[in.readInt()];
+						in.readFully(data);
+						printRow(w, RecordCodec.decodeRow(data), length);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			w.append(border).newLine();
+		} catch (IOException e) {
+			throw new MyException(MsgType.SelectSpillError, String.valueOf(e.getMessage()));
+		} finally {
+			if (spillOut != null) {
+				try {
+					spillOut.close();
+				} catch (IOException e) {
+					// the file is deleted anyway
+				}
+			}
+			if (spill != null) {
+				spill.delete();
+			}
+		}
+	}
+
+	// Width of the longest value of a column
+	private static int declaredWidth(Attribute attr) {
+		int width;
+		switch (attr.getDataType()) {
+		case TYPE_CHAR:
+			width = attr.getCharLength();
+			break;
+		case TYPE_DATE:
+			width = DATE_WIDTH;
+			break;
+		default:
+			width = INT_WIDTH;
+			break;
+		}
+		return attr.isNullable() ? MyCalc.max(width, NULL_WIDTH) : width;
+	}
+
+	private static String border(int[] length) {
+		StringBuilder border = new StringBuilder("+");
+		for (int i = 0; i < length.length; i++) {
+			for (int j = 0; j < length[i] + 2; j++) {
+				border.append('-');
+			}
+			border.append('+');
+		}
+		return border.toString();
+	}
+
+	private void printHeader(ResultWriter w, String border, int[] length) {
+		w.append(border).newLine();
+
+		// Column Names
+		w.append('|');
+		for (int i = 0; i < length.length; i++) {
+			printCell(w, titles.get(i), length[i]);
+		}
+		w.newLine();
+
+		w.append(border).newLine();
+	}
+
+	private static void printRow(ResultWriter w, ArrayList<Value> rec, int[] length) {
+		w.append('|');
+		for (int i = 0; i < length.length; i++) {
+			printCell(w, rec.get(i).toString(), length[i]);
+		}
+		w.newLine();
+	}
+
+	// Same as " %-ns |": a longer text is not cut
+	private static void printCell(ResultWriter w, String text, int width) {
+		w.append(' ').append(text).pad(width - text.length()).append(" |");
+	}
+
+	// CSV, TSV and JSON lines: one line per row, in one pass
+	private void printLines(ResultWriter w) throws MyException {
+		int columnNum = titles.size();
+		child.open();	// before the header: a select list error is raised by open()
+		if (format != OutputFormat.JSON) {
+			for (int i = 0; i < columnNum; i++) {
+				if (i > 0) {
+					w.append(format == OutputFormat.CSV ? ',' : '\t');
+				}
+				if (format == OutputFormat.CSV) {
+					appendCsv(w, titles.get(i));
+				}
+				else {
+					appendTsv(w, titles.get(i));
+				}
+			}
+			w.newLine();
+		}
+
+		try {
+			ArrayList<Value> rec;
+			while ((rec = child.next()) != null) {
+				switch (format) {
+				case CSV:
+					for (int i = 0; i < columnNum; i++) {
+						if (i > 0) {
+							w.append(',');
+						}
+						if (!rec.get(i).isNull()) {
+							appendCsv(w, rec.get(i).toString());
+						}
+					}
+					break;
+				case TSV:
+					for (int i = 0; i < columnNum; i++) {
+						if (i > 0) {
+							w.append('\t');
+						}
+						if (rec.get(i).isNull()) {
+							w.append("\\N");
+						}
+						else {
+							appendTsv(w, rec.get(i).toString());
+						}
+					}
+					break;
+				default:
+					w.append('{');
+					for (int i = 0; i < columnNum; i++) {
+						if (i > 0) {
+							w.append(',');
+						}
+						appendJsonString(w, titles.get(i));
+						w.append(':');
+						Value v = rec.get(i);
+						if (v.isNull()) {
+							w.append("null");
+						}
+						else if (v.type == DataType.TYPE_INT) {
+							w.append(v.toString());
+						}
+						else {
+							appendJsonString(w, v.toString());
+						}
+					}
+					w.append('}');
+					break;
+				}
+				w.newLine();
+			}
+		} finally {
+			child.close();
+		}
+	}
+
+	// Quoted if it is empty (which would read as null, see CsvReader) or holds a comma, quote or line break
+	private static void appendCsv(ResultWriter w, String text) {
+		boolean quote = text.length() == 0;
+		for (int i = 0; i < text.length() && !quote; i++) {
+			char c = text.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			w.append(text);
+			return;
+		}
+
+		w.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"') {
+				w.append('"');
+			}
+			w.append(c);
+		}
+		w.append('"');
+	}
+
+	private static void appendTsv(ResultWriter w, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '\t':
+				w.append("\\t");
+				break;
+			case '\n':
+				w.append("\\n");
+				break;
+			case '\r':
+				w.append("\\r");
+				break;
+			case '\\':
+				w.append("\\\\");
+				break;
+			default:
+				w.append(c);
+				break;
+			}
+		}
+	}
+
+	private static void appendJsonString(ResultWriter w, String text) {
+		w.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '"':
+				w.append("\\\"");
+				break;
+			case '\\':
+				w.append("\\\\");
+				break;
+			case '\n':
+				w.append("\\n");
+				break;
+			case '\r':
+				w.append("\\r");
+				break;
+			case '\t':
+				w.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					String hex = Integer.toHexString(c);
+					w.append("\\u");
+					w.append("0000".substring(hex.length())).append(hex);
+				}
+				else {
+					w.append(c);
+				}
+				break;
+			}
+		}
+		w.append('"');
+	}
+}
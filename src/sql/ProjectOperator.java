@@ -0,0 +1,80 @@
+package sql;
+
+import java.util.ArrayList;
+
+// Reorders columns of child rows into the select list
+public class ProjectOperator implements Operator {
+	private Operator child;
+	private int[] indexes;
+	private ArrayList<Attribute> schema;
+	private MyException unresolved;	// select list error, raised by open() after the WHERE errors of child
+
+	/*
+	 * selected: select list, null means every column
+	 * open() throws SelectColumnResolveError if a column can not be resolved, once every row of
+	 * child is filtered, so that a WHERE error is reported first as when the select list was
+	 * applied to the filtered result.
+	 */
+	public ProjectOperator(Operator child, ArrayList<Rename> selected) {
+		this.child = child;
+		ArrayList<Attribute> childSchema = child.getSchema();
+
+		if (selected == null) {
+			indexes = null;
+			schema = childSchema;
+			return;
+		}
+
+		indexes = new int[selected.size()];
+		schema = new ArrayList<Attribute>();
+		try {
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = Binder.resolveSelectColumn(childSchema, selected.get(i));
+				schema.add(childSchema.get(indexes[i]));
+			}
+		} catch (MyException e) {
+			unresolved = e;
+		}
+	}
+
+	@Override
+	public void open() throws MyException {
+		child.open();
+		if (unresolved == null) {
+			return;
+		}
+
+		try {
+			while (child.next() != null) {
+				// rows only matter for the errors they raise
+			}
+		} finally {
+			child.close();
+		}
+		throw unresolved;
+	}
+
+	@Override
+	public ArrayList<Value> next() throws MyException {
+		ArrayList<Value> rec = child.next();
+		if (rec == null || indexes == null) {
+			return rec;
+		}
+
+		ArrayList<Value> entity = new ArrayList<Value>(indexes.length);
+		for (int idx : indexes) {
+			entity.add(rec.get(idx));
+		}
+		return entity;
+	}
+
+	@Override
+	public void close() {
+		child.close();
+	}
+
+	@Override
+	public ArrayList<Attribute> getSchema() {
+		return schema;
+	}
+}
@@ -0,0 +1,402 @@
+package sql;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/*
+ * Compact binary format for rows and catalog entries stored in Berkeley DB
+ *
+ * Every encoded entry starts with FORMAT_VERSION.
+ * Entries written with Java serialization (stream header 0xACED) are still readable.
+ *
+ * Row     : version, column count, null bitmap, (type tag, payload) per non-null value
+ * Catalog : version, table name, next row id, schema, primary keys, foreign keys,
+ *           referred tables, secondary indexes (since version 2)
+ * Value   : INT as zigzag varint, CHAR as length prefixed UTF-8, DATE as one varint yyyymmdd,
+ *           CHAR as a varint code of the column dictionary (since version 3, see CharDictionary)
+ * String  : varint (length + 1) followed by UTF-8 bytes, 0 means null
+ */
+public class RecordCodec {
+	static final byte FORMAT_VERSION = 3;
+
+	static final byte TAG_INT = 1;
+	static final byte TAG_CHAR = 2;
+	static final byte TAG_DATE = 3;
+	static final byte TAG_CHAR_CODE = 4;
+
+	// Check if data was written by ObjectOutputStream
+	static boolean isLegacy(byte[] data) {
+		return data.length >= 2 && data[0] == (byte) 0xAC && data[1] == (byte) 0xED;
+	}
+
+	// Row
+	public static byte[] encodeRow(ArrayList<Value> rec) {
+		return encodeRow(rec, null);
+	}
+
+	// CHAR values found in dict (can be null) are written as codes
+	public static byte[] encodeRow(ArrayList<Value> rec, CharDictionary dict) {
+		Writer w = new Writer(16 + rec.size() * 8);
+		w.writeByte(FORMAT_VERSION);
+		writeRow(w, rec, dict);
+		return w.toByteArray();
+	}
+
+	public static ArrayList<Value> decodeRow(byte[] data) {
+		return decodeRow(data, null);
+	}
+
+	// dict: dictionaries the row was written with, null if there were none
+	@SuppressWarnings("unchecked")
+	public static ArrayList<Value> decodeRow(byte[] data, CharDictionary dict) {
+		if (isLegacy(data)) {
+			return (ArrayList<Value>) DataManager.deserialize(data);
+		}
+
+		Reader r = new Reader(data);
+		checkVersion(r.readByte());
+		return readRow(r, dict);
+	}
+
+	static void writeRow(Writer w, ArrayList<Value> rec, CharDictionary dict) {
+		int size = rec.size();
+		w.writeVarInt(size);
+
+		byte[] nullBitmap = new byte[(size + 7) / 8];
+		for (int i = 0; i < size; i++) {
+			if (rec.get(i).isNull()) {
+				nullBitmap[i / 8] |= (byte) (1 << (i % 8));
+			}
+		}
+		w.writeBytes(nullBitmap);
+
+		for (int i = 0; i < size; i++) {
+			Value v = rec.get(i);
+			if (v.isNull()) {
+				continue;
+			}
+
+			int code = (dict != null && v.type == DataType.TYPE_CHAR) ? dict.code(i, v.strVal) : -1;
+			if (code >= 0) {
+				w.writeByte(TAG_CHAR_CODE);
+				w.writeVarInt(code);
+			}
+			else {
+				writeValue(w, v);
+			}
+		}
+	}
+
+	static ArrayList<Value> readRow(Reader r, CharDictionary dict) {
+		int size = r.readVarInt();
+		byte[] nullBitmap = r.readBytes((size + 7) / 8);
+
+		ArrayList<Value> rec = new ArrayList<Value>(size);
+		for (int i = 0; i < size; i++) {
+			if ((nullBitmap[i / 8] & (1 << (i % 8))) != 0) {
+				rec.add(new Value());
+			}
+			else {
+				rec.add(readValue(r, i, dict));
+			}
+		}
+		return rec;
+	}
+
+	// Value (non-null)
+	static void writeValue(Writer w, Value v) {
+		switch (v.type) {
+		case TYPE_INT:
+			w.writeByte(TAG_INT);
+			w.writeVarInt(zigzag(v.intVal));
+			break;
+		case TYPE_CHAR:
+			w.writeByte(TAG_CHAR);
+			w.writeString(v.strVal);
+			break;
+		case TYPE_DATE:
+			w.writeByte(TAG_DATE);
+			w.writeVarInt(v.dateVal.getValue());
+			break;
+		}
+	}
+
+	// Value of column col
+	static Value readValue(Reader r, int col, CharDictionary dict) {
+		byte tag = r.readByte();
+		switch (tag) {
+		case TAG_CHAR_CODE:
+			if (dict == null) {
+				throw new IllegalStateException("Coded value without dictionary");
+			}
+			return new Value(dict.value(col, r.readVarInt()));
+		case TAG_INT:
+			return new Value(unzigzag(r.readVarInt()));
+		case TAG_CHAR:
+			return new Value(r.readString());
+		case TAG_DATE:
+			return new Value(Date.fromValue(r.readVarInt()));
+		default:
+			throw new IllegalStateException("Unknown value tag " + tag);
+		}
+	}
+
+	// Attribute
+	static void writeAttribute(Writer w, Attribute attr) {
+		w.writeString(attr.getName());
+		w.writeString(attr.getFullName());
+		w.writeByte((byte) attr.getDataType().ordinal());
+		w.writeVarInt(attr.getCharLength());
+		int flags = (attr.isNullable() ? 1 : 0) | (attr.isPrimary() ? 2 : 0) | (attr.isForeign() ? 4 : 0);
+		w.writeByte((byte) flags);
+		w.writeString(attr.getRefTable());
+		w.writeString(attr.getRefColumn());
+	}
+
+	static Attribute readAttribute(Reader r) {
+		String name = r.readString();
+		String fullName = r.readString();
+		DataType dataType = DataType.values()[r.readByte()];
+		int charLength = r.readVarInt();
+		int flags = r.readByte();
+		String refTable = r.readString();
+		String refColumn = r.readString();
+		return new Attribute(name, fullName, dataType, charLength,
+				(flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0, refTable, refColumn);
+	}
+
+	// ForeignKeyConstraint
+	static void writeForeignKey(Writer w, ForeignKeyConstraint fkc) {
+		w.writeStringList(fkc.foreignKeys);
+		w.writeString(fkc.refTable);
+		w.writeStringList(fkc.referingKeys);
+		w.writeByte((byte) (fkc.nullable ? 1 : 0));
+	}
+
+	static ForeignKeyConstraint readForeignKey(Reader r) {
+		ArrayList<String> foreignKeys = r.readStringList();
+		String refTable = r.readString();
+		ArrayList<String> referingKeys = r.readStringList();
+		ForeignKeyConstraint fkc = new ForeignKeyConstraint(foreignKeys, refTable, referingKeys);
+		fkc.nullable = (r.readByte() != 0);
+		return fkc;
+	}
+
+	// Relation catalog entry (records are stored separately)
+	public static byte[] encodeRelation(Relation rel) {
+		Writer w = new Writer(256);
+		w.writeByte(FORMAT_VERSION);
+		w.writeString(rel.getTableName());
+		w.writeVarLong(rel.getNextRowId());
+
+		ArrayList<Attribute> schema = rel.getSchema();
+		w.writeVarInt(schema.size());
+		for (Attribute attr : schema) {
+			writeAttribute(w, attr);
+		}
+
+		w.writeStringList(rel.getPrimaryKeys());
+
+		ArrayList<ForeignKeyConstraint> fKeys = rel.getForeignKeyConstraint();
+		w.writeVarInt(fKeys.size());
+		for (ForeignKeyConstraint fkc : fKeys) {
+			writeForeignKey(w, fkc);
+		}
+
+		w.writeStringList(rel.getreferredTableList());
+
+		ArrayList<SecondaryIndex> indexes = rel.getIndexes();
+		w.writeVarInt(indexes.size());
+		for (SecondaryIndex index : indexes) {
+			w.writeString(index.getName());
+			w.writeStringList(index.getColumns());
+		}
+		return w.toByteArray();
+	}
+
+	public static Relation decodeRelation(byte[] data) {
+		if (isLegacy(data)) {
+			return (Relation) DataManager.deserialize(data);
+		}
+
+		Reader r = new Reader(data);
+		byte version = r.readByte();
+		checkVersion(version);
+		String tableName = r.readString();
+		long nextRowId = r.readVarLong();
+
+		int schemaSize = r.readVarInt();
+		ArrayList<Attribute> schema = new ArrayList<Attribute>(schemaSize);
+		for (int i = 0; i < schemaSize; i++) {
+			schema.add(readAttribute(r));
+		}
+
+		ArrayList<String> pKeys = r.readStringList();
+
+		int fKeySize = r.readVarInt();
+		ArrayList<ForeignKeyConstraint> fKeys = new ArrayList<ForeignKeyConstraint>(fKeySize);
+		for (int i = 0; i < fKeySize; i++) {
+			fKeys.add(readForeignKey(r));
+		}
+
+		ArrayList<String> referredTableList = r.readStringList();
+
+		ArrayList<SecondaryIndex> indexes = new ArrayList<SecondaryIndex>();
+		if (version >= 2) {
+			int indexCount = r.readVarInt();
+			for (int i = 0; i < indexCount; i++) {
+				String name = r.readString();
+				indexes.add(new SecondaryIndex(name, r.readStringList()));
+			}
+		}
+		return new Relation(tableName, schema, pKeys, fKeys, referredTableList, nextRowId, indexes);
+	}
+
+	private static void checkVersion(byte version) {
+		if (version < 1 || version > FORMAT_VERSION) {
+			throw new IllegalStateException("Unsupported record format version " + version);
+		}
+	}
+
+	private static int zigzag(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+
+	private static int unzigzag(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	// Growable output buffer
+	static class Writer {
+		private byte[] buf;
+		private int pos;
+
+		Writer(int capacity) {
+			buf = new byte[capacity];
+		}
+
+		private void ensure(int n) {
+			if (pos + n > buf.length) {
+				byte[] newBuf = new byte[Math.max(buf.length * 2, pos + n)];
+				System.arraycopy(buf, 0, newBuf, 0, pos);
+				buf = newBuf;
+			}
+		}
+
+		void writeByte(byte b) {
+			ensure(1);
+			buf[pos++] = b;
+		}
+
+		void writeBytes(byte[] b) {
+			ensure(b.length);
+			System.arraycopy(b, 0, buf, pos, b.length);
+			pos += b.length;
+		}
+
+		void writeVarInt(int n) {
+			ensure(5);
+			while ((n & ~0x7F) != 0) {
+				buf[pos++] = (byte) ((n & 0x7F) | 0x80);
+				n >>>= 7;
+			}
+			buf[pos++] = (byte) n;
+		}
+
+		void writeVarLong(long n) {
+			ensure(10);
+			while ((n & ~0x7FL) != 0) {
+				buf[pos++] = (byte) ((n & 0x7F) | 0x80);
+				n >>>= 7;
+			}
+			buf[pos++] = (byte) n;
+		}
+
+		void writeString(String s) {
+			if (s == null) {
+				writeVarInt(0);
+				return;
+			}
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(b.length + 1);
+			writeBytes(b);
+		}
+
+		void writeStringList(ArrayList<String> list) {
+			writeVarInt(list.size());
+			for (String s : list) {
+				writeString(s);
+			}
+		}
+
+		byte[] toByteArray() {
+			byte[] data = new byte[pos];
+			System.arraycopy(buf, 0, data, 0, pos);
+			return data;
+		}
+	}
+
+	// Input cursor over encoded bytes
+	static class Reader {
+		private final byte[] buf;
+		private int pos;
+
+		Reader(byte[] data) {
+			buf = data;
+		}
+
+		byte readByte() {
+			return buf[pos++];
+		}
+
+		byte[] readBytes(int n) {
+			byte[] b = new byte[n];
+			System.arraycopy(buf, pos, b, 0, n);
+			pos += n;
+			return b;
+		}
+
+		int readVarInt() {
+			int result = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buf[pos++];
+				result |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return result;
+		}
+
+		long readVarLong() {
+			long result = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buf[pos++];
+				result |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return result;
+		}
+
+		String readString() {
+			int len = readVarInt();
+			if (len == 0) {
+				return null;
+			}
+			String s = new String(buf, pos, len - 1, StandardCharsets.UTF_8);
+			pos += len - 1;
+			return s;
+		}
+
+		ArrayList<String> readStringList() {
+			int size = readVarInt();
+			ArrayList<String> list = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				list.add(readString());
+			}
+			return list;
+		}
+	}
+}
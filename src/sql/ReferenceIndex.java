@@ -0,0 +1,111 @@
+package sql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Rows of a child relation grouped by the values of one foreign key
+ *
+ * Keys hold the foreign key columns in the order of ForeignKeyConstraint.referingKeys,
+ * so a parent primary key filtered by referingKeys looks up its referencing rows.
+ * Rows with a null foreign key column never match a parent and are not indexed.
+ */
+public class ReferenceIndex {
+	// Indexed row with its row id, so that callers can mark it dirty without a scan
+	static class Entry {
+		final long rowId;
+		final ArrayList<Value> record;
+
+		Entry(long rowId, ArrayList<Value> record) {
+			this.rowId = rowId;
+			this.record = record;
+		}
+	}
+
+	private final int[] columns;
+	private final HashMap<KeyTuple, ArrayList<Entry>> entries = new HashMap<KeyTuple, ArrayList<Entry>>();
+
+	ReferenceIndex(int[] columns) {
+		this.columns = columns;
+	}
+
+	KeyTuple keyOf(ArrayList<Value> rec) {
+		return KeyTuple.of(rec, columns);
+	}
+
+	void add(long rowId, ArrayList<Value> rec) {
+		KeyTuple key = keyOf(rec);
+		if (key.hasNull()) {
+			return;
+		}
+
+		ArrayList<Entry> bucket = entries.get(key);
+		if (bucket == null) {
+			bucket = new ArrayList<Entry>(1);
+			entries.put(key, bucket);
+		}
+		bucket.add(new Entry(rowId, rec));
+	}
+
+	// Remove one row, must be called before its indexed columns change
+	void remove(ArrayList<Value> rec) {
+		KeyTuple key = keyOf(rec);
+		ArrayList<Entry> bucket = entries.get(key);
+		if (bucket == null) {
+			return;
+		}
+
+		for (int i = 0; i < bucket.size(); i++) {
+			if (bucket.get(i).record == rec) {
+				bucket.remove(i);
+				break;
+			}
+		}
+		if (bucket.size() == 0) {
+			entries.remove(key);
+		}
+	}
+
+	// Remove many rows, each bucket is swept once (target is an identity set)
+	void removeAll(ArrayList<ArrayList<Value>> recList, Set<ArrayList<Value>> target) {
+		HashSet<KeyTuple> touched = new HashSet<KeyTuple>();
+		for (ArrayList<Value> rec : recList) {
+			touched.add(keyOf(rec));
+		}
+
+		for (KeyTuple key : touched) {
+			ArrayList<Entry> bucket = entries.get(key);
+			if (bucket == null) {
+				continue;
+			}
+
+			ArrayList<Entry> kept = new ArrayList<Entry>(bucket.size());
+			for (Entry e : bucket) {
+				if (!target.contains(e.record)) {
+					kept.add(e);
+				}
+			}
+			if (kept.size() == 0) {
+				entries.remove(key);
+			}
+			else {
+				entries.put(key, kept);
+			}
+		}
+	}
+
+	// Rows referencing the given parent key, empty if none
+	ArrayList<Entry> lookup(KeyTuple key) {
+		if (key.hasNull()) {
+			return new ArrayList<Entry>();
+		}
+
+		ArrayList<Entry> bucket = entries.get(key);
+		if (bucket == null) {
+			return new ArrayList<Entry>();
+		}
+		return bucket;
+	}
+}
@@ -1,13 +1,29 @@
 package sql;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
 import com.sleepycat.je.Database;
 
 public class Relation implements Serializable {
 	private static final long serialVersionUID = 1L;
-	static final String EMPTY_RELATION = "--empty";
 	static final String RESULT_RELATION = "--result";
+	static final String ROW_KEY_SEPARATOR = "#";
+	// Rows of a LOAD checked and written back together
+	static final int LOAD_BATCH_ROWS = 10000;
+
+	// Decoded relations shared by every statement
+	static final RelationCache cache = new RelationCache(RelationCache.DEFAULT_BUDGET);
 
 	private String tableName;
 	private ArrayList<Attribute> schema;
@@ -15,6 +31,27 @@ public class Relation implements Serializable {
 	private ArrayList<ArrayList<Value>> records;
 	private ArrayList<String> pKeys;
 	private ArrayList<ForeignKeyConstraint> fKeys;
+	private long nextRowId;
+	private ArrayList<SecondaryIndex> indexes;
+
+	// Row id of each record (same order as records), not stored in the catalog entry
+	private transient ArrayList<Long> rowIds;
+	// Rows changed since the last write-back: row id -> new row (null if deleted)
+	private transient LinkedHashMap<Long, ArrayList<Value>> dirtyRows;
+	private transient int[] pKeyIndexes;
+	// Referencing rows per foreign key (same order as fKeys), each built on first use
+	private transient ReferenceIndex[] referenceIndexes;
+	// False for a catalog entry whose records are left in Berkeley DB (see db_searchCatalog)
+	private transient boolean rowsLoaded;
+	// Rows with a smaller id may already be stored, so their old index entries are read back on change
+	private transient long storedRowId;
+	// Columnar copy of records (same order), built on first scan and dropped by every change.
+	// For a relation which is not loaded it is the cached copy of the stored rows, if they fit.
+	private transient ColumnarTable columnar;
+	// Dictionaries the stored rows are written with (null if there are none yet)
+	private transient CharDictionary dictionary;
+	// Stored CHAR cells of dictionary columns written as strings (every CHAR cell without dictionary)
+	private transient long uncodedCells;
 
 	// Constructor
 	public Relation(String tableName) {
@@ -22,6 +59,22 @@ public class Relation implements Serializable {
 		schema = new ArrayList<Attribute>();
 		referredTableList = new ArrayList<String>();
 		records = new ArrayList<ArrayList<Value>>();
+		rowIds = new ArrayList<Long>();
+		dirtyRows = new LinkedHashMap<Long, ArrayList<Value>>();
+		indexes = new ArrayList<SecondaryIndex>();
+		rowsLoaded = true;
+	}
+
+	// Restore catalog entry (used by RecordCodec)
+	Relation(String tableName, ArrayList<Attribute> schema, ArrayList<String> pKeys, ArrayList<ForeignKeyConstraint> fKeys, ArrayList<String> referredTableList, long nextRowId, ArrayList<SecondaryIndex> indexes) {
+		this(tableName);
+		this.schema = schema;
+		this.pKeys = pKeys;
+		this.fKeys = fKeys;
+		this.referredTableList = referredTableList;
+		this.nextRowId = nextRowId;
+		this.indexes = indexes;
+		this.storedRowId = nextRowId;
 	}
 
 	// Getter, Setter and some trivial methods
@@ -29,10 +82,6 @@ public class Relation implements Serializable {
 		return tableName;
 	}
 	
-	boolean isEmptyRelation() {
-		return tableName.equals(EMPTY_RELATION);
-	}
-
 	public ArrayList<Attribute> getSchema() {
 		return schema;
 	}
@@ -53,6 +102,26 @@ public class Relation implements Serializable {
 		return fKeys;
 	}
 
+	long getNextRowId() {
+		return nextRowId;
+	}
+
+	public ArrayList<SecondaryIndex> getIndexes() {
+		if (indexes == null) {	// old layout
+			indexes = new ArrayList<SecondaryIndex>();
+		}
+		return indexes;
+	}
+
+	public SecondaryIndex getIndex(String name) {
+		for (SecondaryIndex index : getIndexes()) {
+			if (index.getName().equals(name)) {
+				return index;
+			}
+		}
+		return null;
+	}
+
 	public Attribute getAttribute(String colName) {
 		if (colName.indexOf('.') < 0) {	// only column name
 			for (Attribute attr : schema) {
@@ -72,6 +141,179 @@ public class Relation implements Serializable {
 		}
 	}
 
+	// Column indexes of own (unqualified) column names, resolved once instead of per record
+	int[] getColumnIndexes(ArrayList<String> colList) {
+		int[] indexes = new int[colList.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = getIndexByColumnName(colList.get(i));
+		}
+		return indexes;
+	}
+
+	// Column indexes of primary keys, in order of pKeys
+	int[] getPrimaryKeyIndexes() {
+		if (pKeyIndexes == null) {
+			pKeyIndexes = getColumnIndexes(pKeys);
+		}
+		return pKeyIndexes;
+	}
+
+	KeyTuple primaryKeyOf(ArrayList<Value> rec) {
+		return KeyTuple.of(rec, getPrimaryKeyIndexes());
+	}
+
+	/*
+	 * Primary key index of the stored rows (see PrimaryKeyIndex)
+	 * An existing table is indexed once from its stored rows, the caller holds the write lock of the table.
+	 */
+	private Database getPrimaryKeyIndex(Database db) {
+		Database index = PrimaryKeyIndex.open(db, tableName);
+		if (index != null) {
+			return index;
+		}
+
+		PrimaryKeyIndex builder = new PrimaryKeyIndex(db, tableName);
+		int prefixLength = rowKeyPrefix(tableName).length();
+		PrefixCursor cursor = new PrefixCursor(db, rowKeyPrefix(tableName));
+		byte[] data;
+		while ((data = cursor.next()) != null) {
+			long rowId = Long.parseLong(cursor.currentKey().substring(prefixLength), 16);
+			builder.add(primaryKeyOf(RecordCodec.decodeRow(data, dictionary)), rowId);
+		}
+		return builder.finish();
+	}
+
+	// Check if a record with this primary key exists (key is ordered by pKeys)
+	boolean containsPrimaryKey(Database db, KeyTuple key) {
+		if (key.hasNull()) {
+			return false;
+		}
+
+		// Rows changed since the last write-back are not in the index yet
+		for (ArrayList<Value> rec : dirtyRows.values()) {
+			if (rec != null && primaryKeyOf(rec).equals(key)) {
+				return true;
+			}
+		}
+		long rowId = PrimaryKeyIndex.find(getPrimaryKeyIndex(db), key);
+		return rowId >= 0 && !dirtyRows.containsKey(rowId);
+	}
+
+	// Index of rows referencing fKeys.get(i), keyed in the order of its referingKeys
+	private synchronized ReferenceIndex getReferenceIndex(int i) {
+		if (referenceIndexes == null) {
+			referenceIndexes = new ReferenceIndex[fKeys.size()];
+		}
+		if (referenceIndexes[i] == null) {
+			ReferenceIndex index = new ReferenceIndex(getColumnIndexes(fKeys.get(i).foreignKeys));
+			int size = records.size();
+			for (int r = 0; r < size; r++) {
+				index.add(rowIds.get(r), records.get(r));
+			}
+			referenceIndexes[i] = index;
+		}
+		return referenceIndexes[i];
+	}
+
+	// Add record to every index which is already built
+	private void indexRecord(long rowId, ArrayList<Value> rec) {
+		if (referenceIndexes != null) {
+			for (ReferenceIndex index : referenceIndexes) {
+				if (index != null) {
+					index.add(rowId, rec);
+				}
+			}
+		}
+	}
+
+	// Remove record from every index which is already built, before its values change
+	private void unindexRecord(ArrayList<Value> rec) {
+		if (referenceIndexes != null) {
+			for (ReferenceIndex index : referenceIndexes) {
+				if (index != null) {
+					index.remove(rec);
+				}
+			}
+		}
+	}
+
+	// Append a new record and remember it for the next write-back
+	private void addRecord(ArrayList<Value> rec) {
+		long rowId = nextRowId++;
+		records.add(rec);
+		rowIds.add(rowId);
+		dirtyRows.put(rowId, rec);
+		indexRecord(rowId, rec);
+		columnar = null;
+	}
+
+	// Replace records by row id, for rows copied with new values
+	private void replaceRecords(HashMap<Long, ArrayList<Value>> replaced) {
+		int size = rowIds.size();
+		for (int i = 0; i < size; i++) {
+			ArrayList<Value> rec = replaced.get(rowIds.get(i));
+			if (rec != null) {
+				records.set(i, rec);
+			}
+		}
+		columnar = null;
+	}
+
+	/*
+	 * Copy to change while snapshots may read this version (see SnapshotManager)
+	 * The lists are copied but the rows are shared, so rows are never changed in place.
+	 * Only writers use the reference indexes and writers of a table are serialized, so they move to the copy.
+	 */
+	synchronized Relation copyForWrite() {
+		Relation copy = new Relation(tableName, schema, pKeys, fKeys, referredTableList, nextRowId, indexes);
+		copy.records = new ArrayList<ArrayList<Value>>(records);
+		copy.rowIds = new ArrayList<Long>(rowIds);
+		copy.dirtyRows = new LinkedHashMap<Long, ArrayList<Value>>(dirtyRows);
+		copy.rowsLoaded = rowsLoaded;
+		copy.storedRowId = storedRowId;
+		copy.columnar = columnar;
+		copy.dictionary = dictionary;
+		copy.uncodedCells = uncodedCells;
+		copy.pKeyIndexes = pKeyIndexes;
+		copy.referenceIndexes = referenceIndexes;
+		referenceIndexes = null;
+		return copy;
+	}
+
+	// Remove records in a single sweep and remember their row ids for the next write-back
+	private void removeRecords(ArrayList<ArrayList<Value>> recList) {
+		if (recList.size() == 0) {
+			return;
+		}
+
+		Set<ArrayList<Value>> target = Collections.newSetFromMap(new IdentityHashMap<ArrayList<Value>, Boolean>());
+		target.addAll(recList);
+
+		ArrayList<ArrayList<Value>> survivors = new ArrayList<ArrayList<Value>>();
+		ArrayList<Long> survivorIds = new ArrayList<Long>();
+		int size = records.size();
+		for (int i = 0; i < size; i++) {
+			if (target.contains(records.get(i))) {
+				dirtyRows.put(rowIds.get(i), null);
+			}
+			else {
+				survivors.add(records.get(i));
+				survivorIds.add(rowIds.get(i));
+			}
+		}
+		records = survivors;
+		rowIds = survivorIds;
+		columnar = null;
+
+		if (referenceIndexes != null) {
+			for (ReferenceIndex index : referenceIndexes) {
+				if (index != null) {
+					index.removeAll(recList, target);
+				}
+			}
+		}
+	}
+
 	public ArrayList<String> getColumnList() {
 		ArrayList<String> colList = new ArrayList<String>();
 		for (Attribute attr : schema) {
@@ -93,6 +335,11 @@ public class Relation implements Serializable {
 	}
 
 	public int getIndexByColumnName(String col) {
+		return getIndexByColumnName(schema, col);
+	}
+
+	// Index of col in schema, -1 if not found and -2 if ambiguous
+	public static int getIndexByColumnName(ArrayList<Attribute> schema, String col) {
 		int size = schema.size();
 		int ret = -1;
 		for (int idx = 0; idx < size; idx++) {
@@ -324,6 +571,33 @@ public class Relation implements Serializable {
 		return null;
 	}
 
+	// Create a secondary index and enter every existing record (index name is checked by the caller)
+	public DBMessage createIndex(Database db, String name, ArrayList<String> colList) {
+		for (String col : colList) {
+			if (getAttribute(col) == null) {
+				return new DBMessage(MsgType.IndexColumnExistenceError, col);
+			}
+		}
+
+		SecondaryIndex index = new SecondaryIndex(name, colList);
+		int[] colIdx = getColumnIndexes(colList);
+		int size = records.size();
+		for (int i = 0; i < size; i++) {
+			index.insert(db, SecondaryIndex.key(records.get(i), colIdx, rowIds.get(i)));
+		}
+		getIndexes().add(index);
+		return null;
+	}
+
+	// Drop a secondary index with its entries
+	public void dropIndex(Database db, String name) {
+		SecondaryIndex index = getIndex(name);
+		if (index != null) {
+			index.drop(db);
+			getIndexes().remove(index);
+		}
+	}
+
 	// desc query output
 	public String describe() {
 		String desc = "table_name [" + tableName + "]\n";
@@ -407,457 +681,461 @@ public class Relation implements Serializable {
 		return retList;
 	}
 
-	// Check constraints for insert value tuple
-	private DBMessage insertConstraintCheck(Database db, ArrayList<ColValTuple> cvTuple) {
-		// Primary Key Constraint
-		if (pKeys.size() > 0) {
-			BooleanExpression pKeyCheck = generatePrimaryCheckExpr(cvTuple);
-			ArrayList<ArrayList<Value>> searchResult;
-			
-			try {
-				searchResult = pKeyCheck.filter(this);
-			}
-			catch (MyException e) {
-				return e.getDBMessage();
-			}
-			
-			if (searchResult.size() > 0) {
-				return new DBMessage(MsgType.InsertDuplicatePrimaryKeyError);
-			}
-		}
-		
-		// Referential Integrity Check
-		boolean refIntegrityCheckNeeded = true;
+	// Record of type checked values for colList (every column if empty)
+	private ArrayList<Value> parseRecord(ArrayList<String> colList, ArrayList<Value> valList) throws MyException {
+		ArrayList<ColValTuple> cvTuple = parseInputValue(colList, valList);
+		ArrayList<Value> newRecord = new ArrayList<Value>(cvTuple.size());
 		for (ColValTuple cv : cvTuple) {
-			if (cv.value.isNull()) {
-				refIntegrityCheckNeeded = false;
-				break;
+			newRecord.add(cv.value);
+		}
+		return newRecord;
+	}
+
+	/*
+	 * Records to be inserted together, each checked against the table and the records before it
+	 * Primary keys of the batch are kept in a hash set next to the primary key index, and parent
+	 * tables are looked up once per batch instead of once per record.
+	 */
+	private class InsertBatch {
+		final Database db;
+		final ArrayList<ArrayList<Value>> records = new ArrayList<ArrayList<Value>>();
+		final HashSet<KeyTuple> primaryKeys = new HashSet<KeyTuple>();
+		final Relation[] parents;
+		final int[][] parentKeyColumns;	// columns of fKeys.get(i) in the order of the primary keys of parents[i]
+
+		InsertBatch(Database db) {
+			this.db = db;
+			parents = new Relation[fKeys.size()];
+			parentKeyColumns = new int[fKeys.size()][];
+			for (int i = 0; i < parents.length; i++) {
+				ForeignKeyConstraint fkc = fKeys.get(i);
+				parents[i] = Relation.db_searchKeys(db, fkc.refTable);
+
+				// Foreign key references every primary key column of refTable
+				ArrayList<String> parentKeys = parents[i].getPrimaryKeys();
+				int[] columns = new int[parentKeys.size()];
+				for (int k = 0; k < columns.length; k++) {
+					int j = fkc.referingKeys.indexOf(parentKeys.get(k));
+					columns[k] = getIndexByColumnName(fkc.foreignKeys.get(j));
+				}
+				parentKeyColumns[i] = columns;
 			}
 		}
-		
-		if (refIntegrityCheckNeeded) {
-			for (ForeignKeyConstraint fkc : fKeys) {
-				ArrayList<ColValTuple> fcv = ColValTuple.columnFilter(fkc.foreignKeys, cvTuple);
-				for (int i = 0; i < fcv.size(); i++) {
-					fcv.get(i).columnName = fkc.referingKeys.get(i);
+
+		// Check constraints for rec and add it to the batch if they hold
+		DBMessage add(ArrayList<Value> rec) {
+			// Primary Key Constraint
+			KeyTuple key = null;
+			if (pKeys.size() > 0) {
+				key = primaryKeyOf(rec);
+				if (containsPrimaryKey(db, key) || (!key.hasNull() && primaryKeys.contains(key))) {
+					return new DBMessage(MsgType.InsertDuplicatePrimaryKeyError);
 				}
-				
-				Relation refr = Relation.db_search(db, fkc.refTable);
-				BooleanExpression refbool = refr.generatePrimaryCheckExpr(fcv);
-				
-				ArrayList<ArrayList<Value>> fsearchList = refr.search(refbool);
-				
-				if (fsearchList.size() == 0) {
-					return new DBMessage(MsgType.InsertReferentialIntegrityError);
+			}
+
+			// Referential Integrity Check, not needed if any value is null
+			boolean refIntegrityCheckNeeded = true;
+			for (Value v : rec) {
+				if (v.isNull()) {
+					refIntegrityCheckNeeded = false;
+					break;
+				}
+			}
+
+			if (refIntegrityCheckNeeded) {
+				for (int i = 0; i < parents.length; i++) {
+					if (!parents[i].containsPrimaryKey(db, KeyTuple.of(rec, parentKeyColumns[i]))) {
+						return new DBMessage(MsgType.InsertReferentialIntegrityError);
+					}
 				}
 			}
+
+			records.add(rec);
+			if (key != null && !key.hasNull()) {
+				primaryKeys.add(key);
+			}
+			return null;
+		}
+
+		int size() {
+			return records.size();
+		}
+
+		// Append the records of the batch to the table and start an empty one
+		void commit() {
+			for (ArrayList<Value> rec : records) {
+				addRecord(rec);
+			}
+			records.clear();
+			primaryKeys.clear();
 		}
-		
-		return null;
 	}
 
 	// Insert records
 	public DBMessage insertRecord(Database db, ArrayList<String> colList, ArrayList<Value> valList) {
-		DBMessage msg;
-		ArrayList<ColValTuple> cvTuple;
+		ArrayList<ArrayList<Value>> valLists = new ArrayList<ArrayList<Value>>();
+		valLists.add(valList);
+		return insertRecords(db, colList, valLists);
+	}
+
+	// Insert records of values for colList (every column if empty), either all of them or none
+	public DBMessage insertRecords(Database db, ArrayList<String> colList, ArrayList<ArrayList<Value>> valLists) {
+		InsertBatch batch = new InsertBatch(db);
+		for (ArrayList<Value> valList : valLists) {
+			DBMessage msg;
+			try {
+				msg = batch.add(parseRecord(colList, valList));
+			}
+			catch (MyException e) {
+				return e.getDBMessage();
+			}
+			if (msg != null) {
+				return msg;
+			}
+		}
+		batch.commit();
 		
+		return null;
+	}
+
+	/*
+	 * Append the rows of a CSV file (see CsvReader), written back every LOAD_BATCH_ROWS rows
+	 * Loading stops at the first row which cannot be read or inserted, the rows before it stay.
+	 * In transactional mode every written batch is committed on its own.
+	 */
+	public DBMessage load(Database db, String file) {
+		BufferedReader in;
 		try {
-			cvTuple = parseInputValue(colList, valList);
+			in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		}
+		catch (IOException e) {
+			return new DBMessage(MsgType.LoadFileError, file);
+		}
+
+		CsvReader reader = new CsvReader(in, schema);
+		InsertBatch batch = new InsertBatch(db);
+		ArrayList<String> allColumns = new ArrayList<String>();
+		DBMessage error = null;
+		int loaded = 0;
+		try {
+			ArrayList<Value> valList;
+			while ((valList = reader.next()) != null) {
+				DBMessage msg = batch.add(parseRecord(allColumns, valList));
+				if (msg != null) {
+					throw new MyException(msg);
+				}
+				if (batch.size() == LOAD_BATCH_ROWS) {
+					int rows = batch.size();
+					batch.commit();
+					db_replace(db, this);
+					if (!DataManager.checkpoint()) {
+						throw new MyException(new DBMessage(MsgType.TransactionAborted));
+					}
+					loaded += rows;
+				}
+			}
 		}
 		catch (MyException e) {
-			return e.getDBMessage();
+			error = e.getDBMessage();
 		}
-		
-		msg = insertConstraintCheck(db, cvTuple);
-		if (msg != null) {
-			return msg;
+		catch (IOException e) {
+			error = new DBMessage(MsgType.LoadFileError, file);
+		}
+		finally {
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+				// nothing was written to it
+			}
 		}
-		
-		ArrayList<Value> newRecord = new ArrayList<Value>();
-		int size = cvTuple.size();
 
-		for (int i = 0; i < size; i++) {
-			newRecord.add(cvTuple.get(i).value);
+		if (batch.size() > 0) {
+			int rows = batch.size();
+			batch.commit();
+			db_replace(db, this);
+			if (DataManager.checkpoint()) {
+				loaded += rows;
+			}
+			else if (error == null) {
+				error = new DBMessage(MsgType.TransactionAborted);
+			}
 		}
-		records.add(newRecord);
-		
-		return null;
-	}
 
-	// Create BooleanExpression class for checking primary key constraints
-	BooleanExpression generatePrimaryCheckExpr(ArrayList<ColValTuple> cvTuple) {
-		ArrayList<ColValTuple> pKeyTuple = ColValTuple.columnFilter(pKeys, cvTuple);
-		
-		return Relation.generateCheckExpr(pKeyTuple);
+		if (error != null && error.type != MsgType.LoadFileError) {
+			return new DBMessage(MsgType.LoadLineError, error.toString(), reader.getLine(), loaded);
+		}
+		return (error != null) ? error : new DBMessage(MsgType.LoadResult, loaded);
 	}
-	
+
 	// Delete query
 	public DBMessage delete(Database db, BooleanExpression where) throws MyException {
-		int deleteCount = 0;
-		int cancelCount = 0;
-
 		ArrayList<ArrayList<Value>> searchResult;
-		ArrayList<ArrayList<Value>> removeList = new ArrayList<ArrayList<Value>>();
 
-		try {
-			if (where == null) {
-				searchResult = records;
-			}
-			else {
-				searchResult = where.filter(this);
+		if (where == null) {
+			searchResult = records;
+		}
+		else {
+			searchResult = filterRecords(db, where);
+		}
+
+		int size = searchResult.size();
+		boolean[] violated = new boolean[size];
+		ArrayList<Relation> children = new ArrayList<Relation>();
+
+		// Each referring table is loaded once and checked against every victim at once
+		if (pKeys.size() > 0 && size > 0) {
+			for (String refTable : referredTableList) {
+				Relation refRel = db_search(db, refTable);
+				refRel.markViolations(this, searchResult, violated);
+				children.add(refRel);
 			}
-		} catch (MyException e) {
-			throw e;
 		}
 
-		for (ArrayList<Value> rec : searchResult) {
-			
-			ArrayList<ColValTuple> myPKey = new ArrayList<ColValTuple>();
-			for (String pCol : pKeys) {
-				myPKey.add(new ColValTuple(pCol, rec.get(getIndexByColumnName(pCol))));
+		ArrayList<ArrayList<Value>> removeList = new ArrayList<ArrayList<Value>>();
+		for (int i = 0; i < size; i++) {
+			if (!violated[i]) {
+				removeList.add(searchResult.get(i));
 			}
-			
-			// Integrity violation check
-			boolean noViolation;
+		}
+		int deleteCount = removeList.size();
+		int cancelCount = size - deleteCount;
 
-			noViolation = checkNoReferentialIntegrityViolation(db, myPKey);
+		for (Relation refRel : children) {
+			refRel.cascadeDeletion(db, this, removeList);
+		}
 
-			if (noViolation) {
+		removeRecords(removeList);
 
-				if (pKeys.size() > 0) {
-					for (String refTable : referredTableList) {
-						Relation refRel = db_search(db, refTable);
-						refRel.cascadeDeletion(db, tableName, myPKey);
-					}
-				}
+		return new DBMessage(MsgType.DeleteResult, deleteCount, cancelCount);
+	}
 
-				removeList.add(rec);
-				deleteCount++;
+	/*
+	 * Set foreign keys referring to deleted parent records to null, written back once if anything changed
+	 * Changed rows are replaced by copies, since snapshots may still read the old ones.
+	 */
+	void cascadeDeletion(Database db, Relation parent, ArrayList<ArrayList<Value>> deleted) {
+		// Referring rows per foreign key, all found before anything changes
+		ArrayList<Integer> keys = new ArrayList<Integer>();
+		ArrayList<ArrayList<ReferenceIndex.Entry>> matchLists = new ArrayList<ArrayList<ReferenceIndex.Entry>>();
+		for (int f = 0; f < fKeys.size(); f++) {
+			ForeignKeyConstraint fkc = fKeys.get(f);
+			if (!fkc.refTable.equals(parent.getTableName())) {
+				continue;
 			}
-			else {
-				cancelCount++;
+
+			int[] parentIdx = parent.getColumnIndexes(fkc.referingKeys);
+			ReferenceIndex index = getReferenceIndex(f);
+			ArrayList<ReferenceIndex.Entry> matches = new ArrayList<ReferenceIndex.Entry>();
+			for (ArrayList<Value> parentRec : deleted) {
+				matches.addAll(index.lookup(KeyTuple.of(parentRec, parentIdx)));
+			}
+			if (matches.size() > 0) {
+				keys.add(f);
+				matchLists.add(matches);
 			}
 		}
-		
-		for (ArrayList<Value> rec : removeList) {
-			records.remove(rec);
+		if (keys.size() == 0) {
+			return;
 		}
-		
-		return new DBMessage(MsgType.DeleteResult, deleteCount, cancelCount);
-	}
-	
-	// Cascade Deletion
-	void cascadeDeletion(Database db, String dTable, ArrayList<ColValTuple> cvList) {
-		for (ForeignKeyConstraint fkc : fKeys) {
-			if (fkc.refTable.equals(dTable)) {
-				ArrayList<ColValTuple> myside = ColValTuple.columnFilter(fkc.referingKeys, cvList);
-				for (int i = 0; i < fkc.referingKeys.size(); i++) {
-					myside.get(i).columnName = fkc.foreignKeys.get(i);
-				}
-				
-				BooleanExpression bxpr = Relation.generateCheckExpr(myside);
-				ArrayList<ArrayList<Value>> searchResult = search(bxpr);
-				
-				for (ArrayList<Value> rec : searchResult) {
-					for (String fk : fkc.foreignKeys) {
-						rec.get(getIndexByColumnName(fk)).setNull();
-					}
+
+		Relation target = SnapshotManager.beginWrite(this);
+		HashMap<Long, ArrayList<Value>> replaced = new HashMap<Long, ArrayList<Value>>();
+		for (int k = 0; k < keys.size(); k++) {
+			int[] fkIdx = getColumnIndexes(fKeys.get(keys.get(k)).foreignKeys);
+			for (ReferenceIndex.Entry e : matchLists.get(k)) {
+				ArrayList<Value> rec = replaced.containsKey(e.rowId) ? replaced.get(e.rowId) : e.record;
+				ArrayList<Value> nulled = new ArrayList<Value>(rec);
+				for (int idx : fkIdx) {
+					nulled.set(idx, new Value());
 				}
+				target.unindexRecord(rec);
+				target.indexRecord(e.rowId, nulled);
+				target.dirtyRows.put(e.rowId, nulled);
+				replaced.put(e.rowId, nulled);
 			}
 		}
-		Relation.db_replace(db, this);
+		target.replaceRecords(replaced);
+		Relation.db_replace(db, target);
 	}
-	
-	// Check if the record violates integrity constraints
-	boolean checkViolateIntegrity(String dTable, ArrayList<ColValTuple> cvList) {
-		for (ForeignKeyConstraint fkc : fKeys) {
-			if (fkc.refTable.equals(dTable) && !fkc.nullable) {
-				ArrayList<ColValTuple> myside = ColValTuple.columnFilter(fkc.referingKeys, cvList);
-				for (int i = 0; i < fkc.referingKeys.size(); i++) {
-					myside.get(i).columnName = fkc.foreignKeys.get(i);
-				}
-				
-				BooleanExpression bxpr = Relation.generateCheckExpr(myside);
-				ArrayList<ArrayList<Value>> searchResult = search(bxpr);
-				
-				if (searchResult.size() > 0) {
-					return true;
-				}
+
+	// Mark parent records which are referred to by a non-nullable foreign key of this relation
+	void markViolations(Relation parent, ArrayList<ArrayList<Value>> parentRecs, boolean[] violated) {
+		for (int f = 0; f < fKeys.size(); f++) {
+			ForeignKeyConstraint fkc = fKeys.get(f);
+			if (!fkc.refTable.equals(parent.getTableName()) || fkc.nullable) {
+				continue;
 			}
-		}
-		return false;
-	}
-	
-	private boolean checkNoReferentialIntegrityViolation(Database db, ArrayList<ColValTuple> myPKey) {
-		
-		if (myPKey.size() == 0) {
-			return true;
-		}
-		
-		boolean violate;
-		for (String referedTable : referredTableList) {
-			
-			Relation referedRel = db_search(db, referedTable);
 
-			violate = referedRel.checkViolateIntegrity(tableName, myPKey);
-			
-			if (violate) {
-				return false;
+			int[] parentIdx = parent.getColumnIndexes(fkc.referingKeys);
+			ReferenceIndex index = getReferenceIndex(f);
+			int size = parentRecs.size();
+			for (int i = 0; i < size; i++) {
+				if (!violated[i] && index.lookup(KeyTuple.of(parentRecs.get(i), parentIdx)).size() > 0) {
+					violated[i] = true;
+				}
 			}
 		}
-		
-		return true;
-	}
-	
-	public ArrayList<ArrayList<Value>> search(BooleanExpression bxpr) {
-		ArrayList<ArrayList<Value>> result = null;
-		try {
-			result = bxpr.filter(this);
-		} catch (MyException e) {
-			e.printStackTrace();
-		}
-		return result;
 	}
 	
 	// Select query
-	DBMessage select(ArrayList<Rename> selected, BooleanExpression bxpr) {
-		ArrayList<ArrayList<Value>> searchResult = null;	// Result from BooleanExpression.filter
-		ArrayList<Integer> indexList = new ArrayList<Integer>();
-		ArrayList<ArrayList<Value>> selectedResult = null;	// Reorganized searchResult
-		
-		try {
-			if (bxpr == null) {
-				searchResult = records;
-			} else {
-				searchResult = bxpr.filter(this);
-			}
-		
-			selectedResult = selectColumn(selected, searchResult, indexList);
-		} catch (MyException e) {
-			return e.getDBMessage();
-		}
-		
-		selectPrintResult(indexList, selected, selectedResult);
-		return null;
+	public static DBMessage selectQuery(Database db, ArrayList<Rename> selected, ArrayList<Rename> tables, BooleanExpression bxpr, PrintStream out) {
+		return selectQuery(db, selected, tables, bxpr, out, OutputFormat.BOX);
 	}
-	
-	/*
-	 * Select column from filtered result
-	 * Convert from searchResult to selectedResult (column ordering)
-	 */
-	private ArrayList<ArrayList<Value>> selectColumn(ArrayList<Rename> sList, ArrayList<ArrayList<Value>> sResult, ArrayList<Integer> iList) throws MyException {
-		int schemaSize = schema.size();
-
-		if (sList == null) {
-			for (int i = 0; i < schemaSize; i++) {
-				iList.add(i);
-			}
-			return sResult;
-		}
 
-		ArrayList<ArrayList<Value>> result = new ArrayList<ArrayList<Value>>();
+	public static DBMessage selectQuery(Database db, ArrayList<Rename> selected, ArrayList<Rename> tables, BooleanExpression bxpr, PrintStream out, OutputFormat format) {
+		DBMessage msg;
 
-		String searchPattern;
-		for (Rename rename : sList) {
-			searchPattern = (rename.tableName == null ? "" : rename.tableName + ".") + rename.columnName;
-			int idx = getIndexByColumnName(searchPattern);
-			if (idx < 0) {
-				throw new MyException(MsgType.SelectColumnResolveError, searchPattern);
-			}
-			iList.add(getIndexByColumnName(searchPattern));
+		msg = selectCheckValidTableName(db, tables);
+		if (msg != null) {
+			return msg;
 		}
 
-		ArrayList<Value> entity;
-		for (ArrayList<Value> rec : sResult) {
-			entity = new ArrayList<Value>();
-			for (int idx : iList) {
-				entity.add(rec.get(idx));
-			}
-			result.add(entity);
+		try {
+			Operator plan = JoinPlanner.selectJoin(db, tables, bxpr);
+			plan = new ProjectOperator(plan, selected);
+			new PrintOperator(plan, selectTitles(plan.getSchema(), selected), out, format).execute();
+		} catch (MyException e) {
+			return e.getDBMessage();
 		}
 
-		return result;
+		return null;
 	}
 
-	/*
-	 * Print select query result
-	 * selectList : columns
-	 * 
-	 * This method checks all result and calculate proper box size for each column 
-	 */
-	private void selectPrintResult(ArrayList<Integer> idxList, ArrayList<Rename> selectList, ArrayList<ArrayList<Value>> selectedResult) {
+	// Column titles of select query result
+	private static ArrayList<String> selectTitles(ArrayList<Attribute> resultSchema, ArrayList<Rename> selectList) {
 		ArrayList<String> titleList = new ArrayList<String>();
 
-		Integer[] length = new Integer[idxList.size()];
-
-		for (int i = 0; i < idxList.size(); i++) {
-			length[i] = 1;
-		}
-
 		if (selectList == null) {
-			for (int i = 0; i < idxList.size(); i++) {
-				titleList.add(schema.get(i).getName().toUpperCase());
-				length[i] = MyCalc.max(length[i], titleList.get(i).length());
+			for (Attribute attr : resultSchema) {
+				titleList.add(attr.getName().toUpperCase());
 			}
 		} else {
-			for (int i = 0; i < selectList.size(); i++) {
-				Rename rename = selectList.get(i);
+			for (Rename rename : selectList) {
 				if (rename.newName != null) {
 					titleList.add(rename.newName.toUpperCase());
 				} else {
 					titleList.add(rename.columnName.toUpperCase());
 				}
-				length[i] = MyCalc.max(length[i], titleList.get(i).length());
-			}
-		}
-
-		int resultSize = selectedResult.size();
-		int columnSize = titleList.size();
-
-		for (int i = 0; i < columnSize; i++) {
-			for (int j = 0; j < resultSize; j++) {
-				length[i] = MyCalc.max(length[i], selectedResult.get(j).get(i).getLength());
 			}
 		}
-
-		selectRealPrint(titleList, length, selectedResult);
+		return titleList;
 	}
-
-	// Actual printing method
-	private static void selectRealPrint(ArrayList<String> title, Integer[] length,
-			ArrayList<ArrayList<Value>> searchResult) {
-		int columnNum = title.size();
-		ArrayList<String> format = new ArrayList<String>();
-
-		for (int i = 0; i < columnNum; i++) {
-			String f = String.format(" %%-%ds ", length[i]);
-			format.add(f);
-		}
-
-		String border = "+";
-		for (int i = 0; i < columnNum; i++) {
-			for (int j = 0; j < length[i] + 2; j++) {
-				border = border + "-";
-			}
-			border = border + "+";
-		}
-
-		System.out.println(border);
-
-		// Column Names
-		System.out.print("|");
-		for (int i = 0; i < columnNum; i++) {
-			System.out.printf(format.get(i), title.get(i));
-			System.out.print("|");
+	
+	// Schema of this relation with columns renamed to alias
+	ArrayList<Attribute> aliasedSchema(String alias) {
+		ArrayList<Attribute> aliased = new ArrayList<Attribute>();
+		for (Attribute attr : schema) {
+			Attribute newAttr = attr.copyAttribute();
+			newAttr.setFullName(alias);
+			aliased.add(newAttr);
 		}
-		System.out.println();
-
-		System.out.println(border);
-
-		// Data
+		return aliased;
+	}
 
-		for (int j = 0; j < searchResult.size(); j++) {
-			System.out.print("|");
-			for (int i = 0; i < columnNum; i++) {
-				System.out.printf(format.get(i), searchResult.get(j).get(i));
-				System.out.print("|");
-			}
-			System.out.println();
+	// Columnar copy of the rows, null if they are neither loaded nor cached
+	// Statements holding shared locks may ask for it at once, so it is built only once.
+	synchronized ColumnarTable getColumnar() {
+		if (columnar == null && rowsLoaded) {
+			columnar = ColumnarTable.of(schema, records, rowIds);
 		}
-
-		System.out.println(border);
+		return columnar;
 	}
 
-	private static BooleanExpression generateCheckExpr(ArrayList<ColValTuple> cvTuple) {
-		Predicate p = new Predicate(cvTuple.get(0));
-		BooleanNode node = new BooleanNode(p);
-		
-		for (int i = 1; i < cvTuple.size(); i++) {
-			p = new Predicate(cvTuple.get(i));
-			node = new BooleanNode('&', node, new BooleanNode(p));
+	// Scan over records with columns renamed to alias
+	Operator scan(Database db, String alias) {
+		ColumnarTable table = getColumnar();
+		if (table != null) {
+			return new ColumnarScanOperator(aliasedSchema(alias), table, null, rowsLoaded ? records : null);
 		}
-		
-		return new BooleanExpression(node);
+		return new StorageScanOperator(db, tableName, aliasedSchema(alias), dictionary);
 	}
-	
-	// Select query
-	public static DBMessage selectQuery(Database db, ArrayList<Rename> selected, ArrayList<Rename> tables, BooleanExpression bxpr) {
-		DBMessage msg;
 
-		msg = selectCheckValidTableName(db, tables);
-		if (msg != null) {
-			return msg;
+	// Scan returning only rows for which filter is true, through a secondary index if one matches
+	Operator scan(Database db, String alias, BooleanExpression filter) throws MyException {
+		if (filter == null) {
+			return scan(db, alias);
 		}
 
-		Relation cartesian = Relation.selectJoin(db, tables);
-		
-		msg = cartesian.select(selected, bxpr);
-		
-		if (msg != null) {
-			return msg;
+		ArrayList<Attribute> aliased = aliasedSchema(alias);
+		// Berkeley DB may already hold rows newer than a snapshot, so it is read in memory
+		IndexScan access = SnapshotManager.isSnapshot(this) ? null : IndexScan.choose(this, aliased, filter);
+		if (access != null) {
+			return new FilterOperator(new ScanOperator(aliased, fetchRows(db, access.rowIds(db))), filter);
 		}
-
-		return null;
+		// Filtered on the columns (in parallel for large tables), rows are made only for the result
+		ColumnarTable table = getColumnar();
+		if (table != null) {
+			return new ColumnarScanOperator(aliased, table, filter.bind(aliased).select(table), rowsLoaded ? records : null);
+		}
+		return new FilterOperator(scan(db, alias), filter);
 	}
-	
-	// Join two relations
-	public static Relation join(Relation r1, String newTable1, Relation r2, String newTable2) {
 
-		Relation result = new Relation("--result");
-		ArrayList<ArrayList<Value>> newRecord = result.getRecords();
-		ArrayList<Attribute> schema = result.getSchema();
-
-		if (newTable1 == null) {
-			newTable1 = r1.getTableName();
+	// Records for which where is true, read through a secondary index if one matches
+	private ArrayList<ArrayList<Value>> filterRecords(Database db, BooleanExpression where) throws MyException {
+		IndexScan access = IndexScan.choose(this, schema, where);
+		if (access == null || records.size() == 0) {
+			return where.filter(this);
 		}
 
-		if (newTable2 == null) {
-			newTable2 = r2.getTableName();
+		BoundExpression bound;
+		try {
+			bound = where.bind(schema);
+		} catch (MyException e) {
+			// Reported only if a row reaches the predicate, as without the index
+			return where.filter(this);
 		}
+		return bound.filter(fetchRows(db, access.rowIds(db)));
+	}
 
-		// Generate Schema
-		ArrayList<Attribute> schema1 = r1.getSchema();
-		ArrayList<Attribute> schema2 = r2.getSchema();
-		Attribute newAttr;
-
-		for (Attribute attr : schema1) {
-			newAttr = attr.copyAttribute();
-			newAttr.setFullName(newTable1);
-			schema.add(newAttr);
+	// Rows with the given ids (ascending), in row id order
+	ArrayList<ArrayList<Value>> fetchRows(Database db, long[] ids) {
+		ArrayList<ArrayList<Value>> rows = new ArrayList<ArrayList<Value>>(ids.length);
+		if (rowsLoaded) {
+			// rowIds is ascending, records are appended with increasing ids and removed in order
+			for (long id : ids) {
+				int pos = Collections.binarySearch(rowIds, id);
+				if (pos >= 0) {
+					rows.add(records.get(pos));
+				}
+			}
+			return rows;
 		}
-		for (Attribute attr : schema2) {
-			newAttr = attr.copyAttribute();
-			newAttr.setFullName(newTable2);
-			schema.add(newAttr);
+		if (columnar != null) {
+			for (long id : ids) {
+				int pos = columnar.find(id);
+				if (pos >= 0) {
+					rows.add(columnar.getRow(pos));
+				}
+			}
+			return rows;
 		}
 
-		// Generate Record Table
-		ArrayList<ArrayList<Value>> record1 = r1.getRecords();
-		ArrayList<ArrayList<Value>> record2 = r2.getRecords();
-		int rsize1 = record1.size();
-		int rsize2 = record2.size();
-
-		ArrayList<Value> newEntity;
-
-		if (r1.isEmptyRelation()) {
-			for (int j = 0; j < rsize2; j++) {
-				newEntity = new ArrayList<Value>();
-				newEntity.addAll(record2.get(j));
-				newRecord.add(newEntity);
+		for (long id : ids) {
+			byte[] data = DataManager.search(db, rowKey(tableName, id));
+			if (data != null) {
+				rows.add(RecordCodec.decodeRow(data, dictionary));
 			}
-			return result;
 		}
+		return rows;
+	}
 
-		for (int i = 0; i < rsize1; i++) {
-			for (int j = 0; j < rsize2; j++) {
-				newEntity = new ArrayList<Value>();
-				newEntity.addAll(record1.get(i));
-				newEntity.addAll(record2.get(j));
-				newRecord.add(newEntity);
-			}
+	// Exact row count if records are loaded, otherwise an upper bound
+	long estimateRowCount() {
+		if (!rowsLoaded && columnar != null) {
+			return columnar.getRowCount();
 		}
+		return rowsLoaded ? records.size() : nextRowId;
+	}
 
-		return result;
+	boolean isEmpty(Database db) {
+		if (rowsLoaded) {
+			return records.size() == 0;
+		}
+		if (columnar != null) {
+			return columnar.getRowCount() == 0;
+		}
+		return !DataManager.containsPrefix(db, rowKeyPrefix(tableName));
 	}
 
 	// check if table list from select query is valid or not
@@ -881,39 +1159,322 @@ public class Relation implements Serializable {
 		return null;
 	}
 
-	// Generate one big table from select query
-	private static Relation selectJoin(Database db, ArrayList<Rename> tables) {
-		Relation result = new Relation(EMPTY_RELATION);
-		Relation rtemp;
+	/*
+	 * Berkeley DB IO for Relation class
+	 *
+	 * Storage layout
+	 * tableName                  : catalog entry (schema, keys, referred tables, next row id) without records
+	 * tableName#<16 hex digits>  : one record per key, ordered by row id (= insertion order)
+	 */
+	static String rowKeyPrefix(String table) {
+		return table + ROW_KEY_SEPARATOR;
+	}
 
-		for (Rename r : tables) {
-			rtemp = Relation.db_search(db, r.tableName);
-			result = Relation.join(result, null, rtemp, r.newName);
+	static String rowKey(String table, long rowId) {
+		return rowKeyPrefix(table) + String.format("%016x", rowId);
+	}
+
+	// Write rows changed since the last write-back
+	private void flushDirtyRows(Database db) {
+		ArrayList<SecondaryIndex> indexList = getIndexes();
+		int[][] indexColumns = new int[indexList.size()][];
+		for (int i = 0; i < indexColumns.length; i++) {
+			indexColumns[i] = getColumnIndexes(indexList.get(i).getColumns());
+		}
+		// Null until the first key check, which builds it from the stored rows
+		Database primaryKeyIndex = (pKeys.size() > 0) ? PrimaryKeyIndex.open(db, tableName) : null;
+
+		for (Long rowId : dirtyRows.keySet()) {
+			ArrayList<Value> rec = dirtyRows.get(rowId);
+			String key = rowKey(tableName, rowId);
+
+			// Records are changed in place, so the before-image for the index comes from the stored row
+			if (indexColumns.length > 0 || primaryKeyIndex != null) {
+				ArrayList<Value> before = null;
+				if (rowId < storedRowId) {
+					byte[] stored = DataManager.search(db, key);
+					if (stored != null) {
+						before = RecordCodec.decodeRow(stored, dictionary);
+					}
+				}
+				for (int i = 0; i < indexColumns.length; i++) {
+					indexList.get(i).update(db, indexColumns[i], rowId, before, rec);
+				}
+				if (primaryKeyIndex != null) {
+					PrimaryKeyIndex.update(primaryKeyIndex, (before == null) ? null : primaryKeyOf(before), (rec == null) ? null : primaryKeyOf(rec), rowId);
+				}
+			}
+
+			if (rec == null) {
+				DataManager.delete(db, key);
+			}
+			else {
+				uncodedCells += internStrings(rec);
+				DataManager.insert(db, key, RecordCodec.encodeRow(rec, dictionary));
+			}
+		}
+		dirtyRows.clear();
+		storedRowId = nextRowId;
+		if (!rowsLoaded) {
+			// Only the inserted rows were kept (see db_searchForInsert)
+			records.clear();
+			rowIds.clear();
 		}
 
-		return result;
+		if (rowsLoaded && CharDictionary.needsCompaction(uncodedCells, records.size())) {
+			compactDictionary(db);
+		}
 	}
-	
-	// Berkeley DB IO for Relation class
+
+	/*
+	 * Share the dictionary instance of every coded CHAR value of rec
+	 * Returns the number of CHAR cells which are written as strings.
+	 */
+	private int internStrings(ArrayList<Value> rec) {
+		int uncoded = 0;
+		int size = rec.size();
+		for (int c = 0; c < size; c++) {
+			Value v = rec.get(c);
+			if (v.type != DataType.TYPE_CHAR) {
+				continue;
+			}
+			if (dictionary == null) {
+				uncoded++;
+				continue;
+			}
+
+			int code = dictionary.code(c, v.strVal);
+			if (code >= 0) {
+				v.strVal = dictionary.value(c, code);
+			}
+			else if (dictionary.hasColumn(c)) {
+				uncoded++;
+			}
+		}
+		return uncoded;
+	}
+
+	// Rebuild the dictionaries from every record and write every row again with the new codes
+	private void compactDictionary(Database db) {
+		dictionary = CharDictionary.build(schema, records);
+		dictionary.store(db, tableName);
+
+		int size = records.size();
+		for (int i = 0; i < size; i++) {
+			ArrayList<Value> rec = records.get(i);
+			internStrings(rec);
+			DataManager.insert(db, rowKey(tableName, rowIds.get(i)), RecordCodec.encodeRow(rec, dictionary));
+		}
+		uncodedCells = 0;
+	}
+
+	public static RelationCache getCache() {
+		return cache;
+	}
+
 	public static void db_insert(Database db, Relation r) {
-		DataManager.insert(db, r.getTableName(), DataManager.serialize(r));
+		DataManager.insert(db, r.getTableName(), RecordCodec.encodeRelation(r));
+		r.flushDirtyRows(db);
+		cache.put(r);
 	}
 
+	// A copy made for snapshots reaches the cache when its statement commits
 	public static void db_replace(Database db, Relation r) {
-		DataManager.replace(db, r.getTableName(), DataManager.serialize(r));
+		DataManager.replace(db, r.getTableName(), RecordCodec.encodeRelation(r));
+		r.flushDirtyRows(db);
+		if (!r.rowsLoaded) {
+			cache.invalidate(r.getTableName());	// the columnar copy misses the new rows
+		}
+		else if (!SnapshotManager.isCopy(r)) {
+			cache.put(r);
+		}
 	}
 
 	public static Relation db_search(Database db, String table) {
+		Relation rel = SnapshotManager.visible(table);
+		if (rel != null) {
+			return rel;
+		}
+
+		rel = cache.get(table);
+		if (rel != null) {
+			return rel;
+		}
+
+		rel = db_load(db, table);
+		if (rel != null) {
+			cache.put(rel);
+		}
+		return rel;
+	}
+
+	/*
+	 * Tables a write to table locks: itself, the tables it references and the tables referencing it
+	 * Only the catalog entry is read, so it can be called before the table is locked. Null if
+	 * there is no such table.
+	 */
+	public static ArrayList<String> db_relatedTables(Database db, String table) {
+		Relation rel = cache.peek(table);
+		if (rel == null) {
+			byte[] data = DataManager.search(db, table);
+			if (data == null) {
+				return null;
+			}
+			rel = RecordCodec.decodeRelation(data);
+		}
+
+		ArrayList<String> tables = new ArrayList<String>();
+		tables.add(table);
+		if (rel.fKeys != null) {
+			for (ForeignKeyConstraint fkc : rel.fKeys) {
+				tables.add(fkc.refTable);
+			}
+		}
+		tables.addAll(rel.referredTableList);
+		return tables;
+	}
+
+	// Relation for a statement to change, which holds the exclusive lock of table (see SnapshotManager)
+	public static Relation db_searchForWrite(Database db, String table) {
+		Relation rel = db_search(db, table);
+		return (rel == null) ? null : SnapshotManager.beginWrite(rel);
+	}
+
+	// Relation for an insert or load, like db_searchForWrite but see db_searchKeys
+	public static Relation db_searchForInsert(Database db, String table) {
+		Relation rel = db_searchKeys(db, table);
+		return (rel == null) ? null : SnapshotManager.beginWrite(rel);
+	}
+
+	/*
+	 * Relation whose primary keys are checked
+	 * Cached relations and relations that fit in the cache are fully loaded. Otherwise only the
+	 * catalog entry is decoded: keys are looked up in the primary key index and the records hold
+	 * just the rows inserted until the next write-back.
+	 */
+	static Relation db_searchKeys(Database db, String table) {
+		Relation rel = SnapshotManager.visible(table);
+		if (rel != null) {
+			return rel;
+		}
+
+		rel = cache.get(table);
+		if (rel != null) {
+			return rel;
+		}
+
+		byte[] data = DataManager.search(db, table);
+		if (data == null) {
+			return null;
+		}
+
+		rel = RecordCodec.decodeRelation(data);
+		if (rel.records != null && rel.records.size() > 0) {
+			return db_search(db, table);	// old layout, records are in the catalog entry
+		}
+
+		if (cache.fits(RelationCache.estimateSize(rel.getSchema(), rel.getNextRowId()))) {
+			return db_search(db, table);
+		}
+
+		rel.records = new ArrayList<ArrayList<Value>>();
+		rel.rowIds = new ArrayList<Long>();
+		rel.dirtyRows = new LinkedHashMap<Long, ArrayList<Value>>();
+		rel.rowsLoaded = false;
+		rel.dictionary = CharDictionary.load(db, table);
+		return rel;
+	}
+
+	/*
+	 * Relation to scan for a select query
+	 * Cached relations and relations that fit in the cache are fully loaded. Otherwise only
+	 * the catalog entry is decoded, with the columnar copy of the rows if that fits in the cache,
+	 * else records are streamed from Berkeley DB.
+	 */
+	public static Relation db_searchCatalog(Database db, String table) {
+		Relation rel = SnapshotManager.visible(table);
+		if (rel != null) {
+			return rel;
+		}
+
+		rel = cache.get(table);
+		if (rel != null) {
+			return rel;
+		}
+
+		byte[] data = DataManager.search(db, table);
+		if (data == null) {
+			return null;
+		}
+
+		rel = RecordCodec.decodeRelation(data);
+		if (rel.records != null && rel.records.size() > 0) {
+			return db_search(db, table);	// old layout, records are in the catalog entry
+		}
+
+		if (cache.fits(RelationCache.estimateSize(rel.getSchema(), rel.getNextRowId()))) {
+			return db_search(db, table);
+		}
+
+		rel.rowsLoaded = false;
+		rel.dictionary = CharDictionary.load(db, table);
+		rel.columnar = cache.getColumnar(table);
+		if (rel.columnar == null && cache.fits(ColumnarTable.estimateSize(rel.getSchema(), rel.getNextRowId()))) {
+			rel.columnar = ColumnarTable.load(db, table, rel.getSchema(), rel.dictionary);
+			cache.putColumnar(table, rel.columnar);
+		}
+		return rel;
+	}
+
+	// Decode relation from Berkeley DB without going through the cache
+	private static Relation db_load(Database db, String table) {
 		byte[] data = DataManager.search(db, table);
 		Relation rel = null;
 		if (data != null) {
-			rel = (Relation) DataManager.deserialize(data);
+			rel = RecordCodec.decodeRelation(data);
+			if (rel.records == null) {
+				rel.records = new ArrayList<ArrayList<Value>>();
+			}
+			rel.rowIds = new ArrayList<Long>();
+			rel.dirtyRows = new LinkedHashMap<Long, ArrayList<Value>>();
+			rel.rowsLoaded = true;
+			rel.dictionary = CharDictionary.load(db, table);
+
+			if (rel.records.size() > 0) {
+				// Old layout stored every record in the catalog entry, move them to their own keys on next write-back
+				for (ArrayList<Value> rec : rel.records) {
+					long rowId = rel.nextRowId++;
+					rel.rowIds.add(rowId);
+					rel.dirtyRows.put(rowId, rec);
+				}
+				return rel;
+			}
+
+			ArrayList<String> keys = new ArrayList<String>();
+			ArrayList<byte[]> values = new ArrayList<byte[]>();
+			DataManager.searchPrefix(db, rowKeyPrefix(table), keys, values);
+
+			int prefixLength = rowKeyPrefix(table).length();
+			int size = keys.size();
+			for (int i = 0; i < size; i++) {
+				ArrayList<Value> rec = RecordCodec.decodeRow(values.get(i), rel.dictionary);
+				rel.uncodedCells += rel.internStrings(rec);
+				rel.records.add(rec);
+				rel.rowIds.add(Long.parseLong(keys.get(i).substring(prefixLength), 16));
+			}
 		}
 		return rel;
 	}
 
 	public static void db_delete(Database db, Relation r) {
+		cache.invalidate(r.getTableName());
+		for (SecondaryIndex index : r.getIndexes()) {
+			index.drop(db);
+		}
+		PrimaryKeyIndex.drop(db, r.getTableName());
 		DataManager.delete(db, r.getTableName());
+		DataManager.delete(db, CharDictionary.key(r.getTableName()));
+		DataManager.deletePrefix(db, rowKeyPrefix(r.getTableName()));
 	}
 
 }
@@ -0,0 +1,180 @@
+package sql;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Bounded LRU cache of decoded relations keyed by table name
+ *
+ * Relation.db_search reads through it, db_insert and db_replace write through it
+ * and db_delete invalidates the entry. Entry sizes are estimated from the schema.
+ * A relation too big to be loaded can still be cached as its columnar copy alone,
+ * which is dropped by the next put or invalidate of the table.
+ */
+public class RelationCache {
+	public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	private long budget;
+	private long usage = 0;
+	private final LinkedHashMap<String, Entry> entries;
+
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+
+	private static class Entry {
+		Relation relation;	// null for a columnar copy alone
+		ColumnarTable columnar;
+		long size;
+
+		Entry(Relation relation, ColumnarTable columnar, long size) {
+			this.relation = relation;
+			this.columnar = columnar;
+			this.size = size;
+		}
+	}
+
+	public RelationCache(long budget) {
+		this.budget = budget;
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);	// access order
+	}
+
+	public synchronized Relation get(String table) {
+		Entry e = entries.get(table);
+		if (e == null || e.relation == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return e.relation;
+	}
+
+	// Cached relation without counting a hit or miss or touching the LRU order
+	public synchronized Relation peek(String table) {
+		Entry e = entries.get(table);
+		return (e == null) ? null : e.relation;
+	}
+
+	public synchronized void put(Relation r) {
+		remove(r.getTableName());
+
+		long size = estimateSize(r);
+		if (size > budget) {
+			return;
+		}
+
+		entries.put(r.getTableName(), new Entry(r, null, size));
+		usage += size;
+		evict();
+	}
+
+	// Columnar copy cached for a relation which is not loaded, null if there is none
+	public synchronized ColumnarTable getColumnar(String table) {
+		Entry e = entries.get(table);
+		return (e == null) ? null : e.columnar;
+	}
+
+	public synchronized void putColumnar(String table, ColumnarTable columnar) {
+		Entry e = entries.get(table);
+		if (e != null && e.relation != null) {
+			return;	// the loaded relation builds its own copy
+		}
+		remove(table);
+
+		long size = columnar.estimateSize();
+		if (size > budget) {
+			return;
+		}
+
+		entries.put(table, new Entry(null, columnar, size));
+		usage += size;
+		evict();
+	}
+
+	// Check if an entry of this size would be kept
+	public synchronized boolean fits(long size) {
+		return size <= budget;
+	}
+
+	public synchronized void invalidate(String table) {
+		remove(table);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		usage = 0;
+	}
+
+	public synchronized void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	private void remove(String table) {
+		Entry old = entries.remove(table);
+		if (old != null) {
+			usage -= old.size;
+		}
+	}
+
+	// Drop least recently used entries until usage fits in budget
+	private void evict() {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (usage > budget && it.hasNext()) {
+			usage -= it.next().getValue().size;
+			it.remove();
+			evictionCount++;
+		}
+	}
+
+	// Rough heap size of a decoded relation with its columnar copy, computed from the declared schema
+	static long estimateSize(Relation r) {
+		return estimateSize(r.getSchema(), r.getRecords().size());
+	}
+
+	static long estimateSize(ArrayList<Attribute> schema, long rowCount) {
+		long rowSize = 48;
+		for (Attribute attr : schema) {
+			switch (attr.getDataType()) {
+			case TYPE_INT:
+				rowSize += 40;
+				break;
+			case TYPE_CHAR:
+				rowSize += 64 + 2 * attr.getCharLength();
+				break;
+			case TYPE_DATE:
+				rowSize += 64;
+				break;
+			}
+		}
+		return 512 + rowSize * rowCount + ColumnarTable.estimateSize(schema, rowCount);
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public synchronized long getUsage() {
+		return usage;
+	}
+
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "relation cache: " + entries.size() + " table(s), " + usage + "/" + budget + " bytes, "
+				+ hitCount + " hit(s), " + missCount + " miss(es), " + evictionCount + " eviction(s)";
+	}
+}
@@ -0,0 +1,58 @@
+package sql;
+
+import java.io.PrintStream;
+
+/*
+ * Text of a query result collected in a buffer and written to the stream in large chunks
+ * The buffer of a thread is reused by every result it prints.
+ */
+class ResultWriter {
+	static final int FLUSH_SIZE = 64 * 1024;
+	private static final String NEWLINE = System.lineSeparator();
+
+	private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(FLUSH_SIZE + 1024);
+		}
+	};
+
+	private final PrintStream out;
+	private final StringBuilder sb;
+
+	ResultWriter(PrintStream out) {
+		this.out = out;
+		sb = buffers.get();
+		sb.setLength(0);	// left over by a result which failed
+	}
+
+	ResultWriter append(String s) {
+		sb.append(s);
+		return this;
+	}
+
+	ResultWriter append(char c) {
+		sb.append(c);
+		return this;
+	}
+
+	ResultWriter pad(int count) {
+		for (int i = 0; i < count; i++) {
+			sb.append(' ');
+		}
+		return this;
+	}
+
+	// End the line, writing the buffer out once it is full
+	void newLine() {
+		sb.append(NEWLINE);
+		if (sb.length() >= FLUSH_SIZE) {
+			flush();
+		}
+	}
+
+	void flush() {
+		out.append(sb);
+		sb.setLength(0);
+	}
+}
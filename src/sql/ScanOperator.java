@@ -0,0 +1,38 @@
+package sql;
+
+import java.util.ArrayList;
+
+// Scan over records which are already in memory
+public class ScanOperator implements Operator {
+	private ArrayList<Attribute> schema;
+	private ArrayList<ArrayList<Value>> records;
+	private int position;
+
+	public ScanOperator(ArrayList<Attribute> schema, ArrayList<ArrayList<Value>> records) {
+		this.schema = schema;
+		this.records = records;
+	}
+
+	@Override
+	public void open() {
+		position = 0;
+	}
+
+	@Override
+	public ArrayList<Value> next() {
+		if (position >= records.size()) {
+			return null;
+		}
+		return records.get(position++);
+	}
+
+	@Override
+	public void close() {
+		position = records.size();
+	}
+
+	@Override
+	public ArrayList<Attribute> getSchema() {
+		return schema;
+	}
+}
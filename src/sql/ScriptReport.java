@@ -0,0 +1,61 @@
+package sql;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/*
+ * Wall time of every statement of a script (--script), printed when the script ends
+ * A statement is named by the line it starts on and its leading keyword.
+ */
+public class ScriptReport {
+	private final ArrayList<String> statements = new ArrayList<String>();
+	private long[] nanos = new long[64];
+	private int errorCount = 0;
+	private long totalNanos = 0;
+
+	public void add(int line, String keyword, long elapsed, boolean error) {
+		int i = statements.size();
+		if (i == nanos.length) {
+			long[] grown = new long[2 * i];
+			System.arraycopy(nanos, 0, grown, 0, i);
+			nanos = grown;
+		}
+		statements.add("line " + line + " " + keyword.toLowerCase() + (error ? " (error)" : ""));
+		nanos[i] = elapsed;
+		if (error) {
+			errorCount++;
+		}
+	}
+
+	// Wall time of the whole script, with parsing and output
+	public void setTotalNanos(long elapsed) {
+		totalNanos = elapsed;
+	}
+
+	public int getStatementCount() {
+		return statements.size();
+	}
+
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	public void print(PrintStream out) {
+		StringBuilder sb = new StringBuilder();
+		long sum = 0;
+		for (int i = 0; i < statements.size(); i++) {
+			sb.append(statements.get(i)).append(": ").append(millis(nanos[i])).append(" ms\n");
+			sum += nanos[i];
+		}
+		sb.append(statements.size()).append(" statement(s), ").append(errorCount).append(" error(s), ")
+				.append(millis(sum)).append(" ms in statements, ").append(millis(totalNanos)).append(" ms in total\n");
+		out.print(sb);
+		out.flush();
+	}
+
+	private static String millis(long nanos) {
+		long micros = nanos / 1000;
+		String frac = Long.toString(1000 + micros % 1000).substring(1);
+		return (micros / 1000) + "." + frac;
+	}
+}
@@ -0,0 +1,217 @@
+package sql;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseException;
+
+/*
+ * Secondary index on columns of one table (CREATE INDEX)
+ *
+ * Entries live in their own Berkeley DB database named DATABASE_PREFIX + index name.
+ * An entry key is the order-preserving encoding of the indexed values followed by the
+ * row id as 8 big-endian bytes, the data is empty. The definition is kept in the catalog
+ * entry of the table and Relation maintains the entries when dirty rows are written back.
+ *
+ * Value : 0x00 for null (sorts first), otherwise 0x01 followed by
+ *         INT and DATE (yyyymmdd) as 4 big-endian bytes with the sign bit flipped
+ *         CHAR as 0x01 + 2 big-endian bytes per UTF-16 unit, terminated by 0x00
+ */
+public class SecondaryIndex {
+	public static final String DATABASE_PREFIX = "index:";
+
+	static final byte NULL_TAG = 0x00;
+	static final byte VALUE_TAG = 0x01;
+
+	// Open index databases, per main database
+	private static final IdentityHashMap<Database, HashMap<String, Database>> handles = new IdentityHashMap<Database, HashMap<String, Database>>();
+
+	private String name;
+	private ArrayList<String> columns;
+
+	SecondaryIndex(String name, ArrayList<String> columns) {
+		this.name = name;
+		this.columns = columns;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ArrayList<String> getColumns() {
+		return columns;
+	}
+
+	private String databaseName() {
+		return DATABASE_PREFIX + name;
+	}
+
+	// Handle of the index database in the environment of db, opened on first use
+	static synchronized Database open(Database db, String dbName) {
+		HashMap<String, Database> open = handles.get(db);
+		if (open == null) {
+			open = new HashMap<String, Database>();
+			handles.put(db, open);
+		}
+
+		Database index = open.get(dbName);
+		if (index == null) {
+			DatabaseConfig dbConfig = new DatabaseConfig();
+			dbConfig.setAllowCreate(true);
+			dbConfig.setSortedDuplicates(false);
+			dbConfig.setTransactional(DataManager.isTransactional());
+			index = db.getEnvironment().openDatabase(null, dbName, dbConfig);
+			open.put(dbName, index);
+		}
+		return index;
+	}
+
+	// Handle of an index database which is open or exists in the environment of db, null if there is none
+	static synchronized Database openExisting(Database db, String dbName) {
+		HashMap<String, Database> open = handles.get(db);
+		if ((open == null || !open.containsKey(dbName)) && !db.getEnvironment().getDatabaseNames().contains(dbName)) {
+			return null;
+		}
+		return open(db, dbName);
+	}
+
+	private static synchronized void close(Database db, String dbName) {
+		HashMap<String, Database> open = handles.get(db);
+		if (open != null) {
+			Database index = open.remove(dbName);
+			if (index != null) {
+				index.close();
+			}
+		}
+	}
+
+	// Close every index database opened for db, must be called before db is closed
+	public static synchronized void closeAll(Database db) {
+		HashMap<String, Database> open = handles.remove(db);
+		if (open != null) {
+			for (Database index : open.values()) {
+				index.close();
+			}
+		}
+	}
+
+	// Remove the index database with all entries
+	void drop(Database db) {
+		remove(db, databaseName());
+	}
+
+	static synchronized void remove(Database db, String dbName) {
+		close(db, dbName);
+		try {
+			db.getEnvironment().removeDatabase(null, dbName);
+		} catch (DatabaseException e) {
+			// never opened, so there is nothing to remove
+		}
+	}
+
+	void insert(Database db, byte[] key) {
+		DataManager.insert(open(db, databaseName()), key, new byte[0]);
+	}
+
+	void delete(Database db, byte[] key) {
+		DataManager.delete(open(db, databaseName()), key);
+	}
+
+	// Update entries of one row, before or after is null if the row did not exist
+	void update(Database db, int[] colIdx, long rowId, ArrayList<Value> before, ArrayList<Value> after) {
+		byte[] oldKey = (before == null) ? null : key(before, colIdx, rowId);
+		byte[] newKey = (after == null) ? null : key(after, colIdx, rowId);
+		if (oldKey != null && newKey != null && Arrays.equals(oldKey, newKey)) {
+			return;
+		}
+
+		if (oldKey != null) {
+			delete(db, oldKey);
+		}
+		if (newKey != null) {
+			insert(db, newKey);
+		}
+	}
+
+	// Row ids of entries from key 'from' through every key starting with 'to' (null: no upper bound), ascending
+	long[] scan(Database db, byte[] from, byte[] to) {
+		ArrayList<byte[]> keys = new ArrayList<byte[]>();
+		DataManager.searchRange(open(db, databaseName()), from, to, keys);
+
+		long[] rowIds = new long[keys.size()];
+		for (int i = 0; i < rowIds.length; i++) {
+			rowIds[i] = rowIdOf(keys.get(i));
+		}
+		Arrays.sort(rowIds);
+		return rowIds;
+	}
+
+	// Entry key of rec, colIdx are the schema positions of the indexed columns
+	static byte[] key(ArrayList<Value> rec, int[] colIdx, long rowId) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(16 + colIdx.length * 8);
+		for (int idx : colIdx) {
+			writeValue(out, rec.get(idx));
+		}
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			out.write((int) (rowId >>> shift));
+		}
+		return out.toByteArray();
+	}
+
+	static long rowIdOf(byte[] key) {
+		long rowId = 0;
+		for (int i = key.length - 8; i < key.length; i++) {
+			rowId = (rowId << 8) | (key[i] & 0xFF);
+		}
+		return rowId;
+	}
+
+	// Encoding of values, byte order of two encodings is the order of Value.compareTo
+	static byte[] encode(ArrayList<Value> values) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(8 + values.size() * 8);
+		for (Value v : values) {
+			writeValue(out, v);
+		}
+		return out.toByteArray();
+	}
+
+	static void writeValue(ByteArrayOutputStream out, Value v) {
+		if (v.isNull()) {
+			out.write(NULL_TAG);
+			return;
+		}
+
+		out.write(VALUE_TAG);
+		switch (v.type) {
+		case TYPE_CHAR:
+			String s = v.strVal;
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				out.write(0x01);
+				out.write(c >>> 8);
+				out.write(c);
+			}
+			out.write(0x00);
+			break;
+		case TYPE_DATE:
+			writeInt(out, v.dateVal.getValue());
+			break;
+		default:
+			writeInt(out, v.intVal);
+			break;
+		}
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int n) {
+		n ^= Integer.MIN_VALUE;
+		out.write(n >>> 24);
+		out.write(n >>> 16);
+		out.write(n >>> 8);
+		out.write(n);
+	}
+}
@@ -0,0 +1,139 @@
+package sql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Accepts SQL sessions on a TCP port of the loopback interface
+ *
+ * Each connection runs its own session, which reads statements from the socket and writes
+ * the output back to it, all sessions sharing the database of the process. Sessions run on
+ * virtual threads if the runtime has them (Java 21 and later), otherwise on a thread pool
+ * with one platform thread per open session.
+ */
+public class SessionServer {
+	// Runs one session until its input ends
+	public interface Handler {
+		void run(InputStream in, PrintStream out);
+	}
+
+	private final ServerSocket serverSocket;
+	private final Handler handler;
+	private final ExecutorService executor;
+	private final AtomicInteger openSessions = new AtomicInteger();
+	private final AtomicInteger sessionCount = new AtomicInteger();
+	private volatile boolean closed = false;
+
+	public SessionServer(int port, Handler handler) throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.handler = handler;
+		executor = newExecutor();
+	}
+
+	// Executor starting a virtual thread per task, or a cached pool of daemon threads before Java 21
+	static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger next = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "sql-session-" + next.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	// Port the server listens on, useful when it was opened on port 0
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	// Accept connections until close()
+	public void serve() throws IOException {
+		while (!closed) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (SocketException e) {
+				if (closed) {
+					break;
+				}
+				throw e;
+			}
+			sessionCount.incrementAndGet();
+			executor.execute(new Session(socket));
+		}
+	}
+
+	// Stop accepting connections, open sessions end with their input
+	public void close() {
+		closed = true;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		executor.shutdown();
+	}
+
+	public int getOpenSessions() {
+		return openSessions.get();
+	}
+
+	public int getSessionCount() {
+		return sessionCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return "session server on port " + getPort() + ": " + openSessions.get() + " open, " + sessionCount.get() + " session(s)";
+	}
+
+	private class Session implements Runnable {
+		private final Socket socket;
+
+		Session(Socket socket) {
+			this.socket = socket;
+		}
+
+		@Override
+		public void run() {
+			openSessions.incrementAndGet();
+			try {
+				socket.setTcpNoDelay(true);
+				InputStream in = new BufferedInputStream(socket.getInputStream());
+				PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false, "UTF-8");
+				handler.run(in, out);
+				out.flush();
+			} catch (IOException e) {
+				// the client went away
+			} finally {
+				DataManager.endSession();
+				SnapshotManager.endStatement(false);
+				LockManager.releaseAll();
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// nothing more to send
+				}
+				openSessions.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package sql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Snapshot reads, so a SELECT does not wait for INSERT, DELETE and LOAD
+ *
+ * A version of a table is a loaded Relation, the committed version is the one in the relation
+ * cache. A select resolves the committed versions of all its tables at once when it starts and
+ * reads them without table locks. A writer changes the committed version in place only while no
+ * snapshot reads that table. Otherwise it changes a copy sharing the rows (see
+ * Relation.copyForWrite), which replaces the committed version when the statement commits. Commits and resolution are serialized,
+ * so a snapshot sees every table of a commit or none of them. An old version is only reachable from
+ * the snapshots which resolved it and is reclaimed by the garbage collector after the last one ends.
+ *
+ * A select falls back to shared table locks when one of its tables has no committed version in the
+ * cache (too big, or not read yet) or is being changed in place.
+ */
+public class SnapshotManager {
+	private static final Object commitLock = new Object();
+	private static long commitClock = 0;	// guarded by commitLock
+
+	private static final AtomicInteger openSnapshots = new AtomicInteger();
+	// Table -> number of open snapshots reading it
+	private static final ConcurrentHashMap<String, AtomicInteger> readers = new ConcurrentHashMap<String, AtomicInteger>();
+	// Tables changed in place by a running statement
+	private static final ConcurrentHashMap<String, Boolean> writtenInPlace = new ConcurrentHashMap<String, Boolean>();
+
+	private static final AtomicLong snapshotCount = new AtomicLong();
+	private static final AtomicLong lockedReadCount = new AtomicLong();
+	private static final AtomicLong copyCount = new AtomicLong();
+	private static final AtomicLong inPlaceCount = new AtomicLong();
+
+	// Versions used by the statement running on a thread
+	private static class Statement {
+		boolean snapshot = false;
+		// Versions read by a snapshot, or copies changed by a writer
+		final HashMap<String, Relation> versions = new HashMap<String, Relation>();
+		final HashSet<String> read = new HashSet<String>();	// tables counted in readers
+		final HashSet<String> copied = new HashSet<String>();
+		final HashSet<String> inPlace = new HashSet<String>();
+	}
+
+	private static final ThreadLocal<Statement> current = new ThreadLocal<Statement>();
+
+	private static Statement statement() {
+		Statement st = current.get();
+		if (st == null) {
+			st = new Statement();
+			current.set(st);
+		}
+		return st;
+	}
+
+	private static AtomicInteger readersOf(String table) {
+		AtomicInteger count = readers.get(table);
+		if (count == null) {
+			AtomicInteger created = new AtomicInteger();
+			count = readers.putIfAbsent(table, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		return count;
+	}
+
+	private static void endRead(Statement st) {
+		for (String table : st.read) {
+			readersOf(table).decrementAndGet();
+		}
+		st.read.clear();
+		st.snapshot = false;
+		openSnapshots.decrementAndGet();
+	}
+
+	/*
+	 * Start a select reading tables from a snapshot
+	 * Returns the tables to lock instead: none if every committed version is resolved, else all of
+	 * them, so that the select still reads one consistent state.
+	 */
+	public static Collection<String> openSnapshot(Collection<String> tables) {
+		Statement st = statement();
+		st.snapshot = true;
+		openSnapshots.incrementAndGet();
+		for (String table : tables) {
+			if (st.read.add(table)) {
+				readersOf(table).incrementAndGet();	// before looking at writtenInPlace, see beginWrite
+			}
+		}
+
+		synchronized (commitLock) {
+			for (String table : tables) {
+				Relation committed = writtenInPlace.containsKey(table) ? null : Relation.getCache().peek(table);
+				if (committed == null) {
+					st.versions.clear();
+					endRead(st);
+					lockedReadCount.incrementAndGet();
+					return tables;
+				}
+				st.versions.put(table, committed);
+			}
+		}
+		snapshotCount.incrementAndGet();
+		return new ArrayList<String>();
+	}
+
+	// Version of table the statement on this thread reads or writes, null for the committed one
+	static Relation visible(String table) {
+		Statement st = current.get();
+		return (st == null) ? null : st.versions.get(table);
+	}
+
+	// Check if rel is a snapshot version, whose rows may already be changed in Berkeley DB
+	static boolean isSnapshot(Relation rel) {
+		Statement st = current.get();
+		return st != null && st.snapshot && st.versions.get(rel.getTableName()) == rel;
+	}
+
+	// Check if rel is a copy of the statement on this thread, which is not committed yet
+	static boolean isCopy(Relation rel) {
+		Statement st = current.get();
+		return st != null && st.copied.contains(rel.getTableName()) && st.versions.get(rel.getTableName()) == rel;
+	}
+
+	/*
+	 * Version of a table the statement on this thread may change: committed itself if no snapshot
+	 * can read it, else a copy. The table must be locked exclusively.
+	 */
+	static Relation beginWrite(Relation committed) {
+		Statement st = statement();
+		String table = committed.getTableName();
+		Relation version = st.versions.get(table);
+		if (version != null) {
+			return version;
+		}
+		if (st.inPlace.contains(table)) {
+			return committed;
+		}
+
+		// Marked before counting the readers of table: a snapshot opened meanwhile sees the mark and locks
+		writtenInPlace.put(table, Boolean.TRUE);
+		if (readersOf(table).get() > 0 && Relation.getCache().peek(table) == committed) {
+			writtenInPlace.remove(table);
+			Relation copy = committed.copyForWrite();
+			st.versions.put(table, copy);
+			st.copied.add(table);
+			copyCount.incrementAndGet();
+			return copy;
+		}
+		st.inPlace.add(table);
+		inPlaceCount.incrementAndGet();
+		return committed;
+	}
+
+	// Drop the copies of the statement on this thread, whose changes are rolled back
+	static void discardCopies() {
+		Statement st = current.get();
+		if (st != null) {
+			for (String table : st.copied) {
+				st.versions.remove(table);
+			}
+			st.copied.clear();
+		}
+	}
+
+	// End the statement on this thread, committing its copies if committed
+	public static void endStatement(boolean committed) {
+		Statement st = current.get();
+		if (st == null) {
+			return;
+		}
+		current.remove();
+
+		if (st.snapshot) {
+			endRead(st);
+		}
+		if (!committed) {
+			discardCopies();
+		}
+		if (st.copied.size() > 0 || st.inPlace.size() > 0) {
+			synchronized (commitLock) {
+				commitClock++;
+				for (String table : st.copied) {
+					Relation.getCache().put(st.versions.get(table));
+				}
+			}
+		}
+		for (String table : st.inPlace) {
+			writtenInPlace.remove(table);
+		}
+	}
+
+	// Number of commits which changed tables
+	public static long getCommitClock() {
+		synchronized (commitLock) {
+			return commitClock;
+		}
+	}
+
+	public static int getOpenSnapshots() {
+		return openSnapshots.get();
+	}
+
+	// Selects which read a snapshot
+	public static long getSnapshotCount() {
+		return snapshotCount.get();
+	}
+
+	// Selects which locked their tables instead
+	public static long getLockedReadCount() {
+		return lockedReadCount.get();
+	}
+
+	// Tables copied because a snapshot could read them
+	public static long getCopyCount() {
+		return copyCount.get();
+	}
+
+	public static long getInPlaceCount() {
+		return inPlaceCount.get();
+	}
+
+	public static String describe() {
+		return "snapshots: " + openSnapshots.get() + " open, " + snapshotCount.get() + " read, "
+				+ lockedReadCount.get() + " locked instead, " + copyCount.get() + " table(s) copied, "
+				+ inPlaceCount.get() + " changed in place";
+	}
+}
@@ -0,0 +1,48 @@
+package sql;
+
+import java.util.ArrayList;
+import com.sleepycat.je.Database;
+
+// Scan which decodes records straight from Berkeley DB, one row at a time
+public class StorageScanOperator implements Operator {
+	private Database db;
+	private String table;
+	private ArrayList<Attribute> schema;
+	private CharDictionary dictionary;	// dictionaries the rows are written with, can be null
+	private PrefixCursor cursor;
+
+	public StorageScanOperator(Database db, String table, ArrayList<Attribute> schema, CharDictionary dictionary) {
+		this.db = db;
+		this.table = table;
+		this.schema = schema;
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	public void open() {
+		close();
+		cursor = new PrefixCursor(db, Relation.rowKeyPrefix(table));
+	}
+
+	@Override
+	public ArrayList<Value> next() {
+		byte[] data = cursor.next();
+		if (data == null) {
+			return null;
+		}
+		return RecordCodec.decodeRow(data, dictionary);
+	}
+
+	@Override
+	public void close() {
+		if (cursor != null) {
+			cursor.close();
+			cursor = null;
+		}
+	}
+
+	@Override
+	public ArrayList<Attribute> getSchema() {
+		return schema;
+	}
+}
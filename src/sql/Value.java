@@ -65,6 +65,9 @@ public class Value implements Comparable<Value>, Serializable {
 	@Override
 	public int compareTo(Value other) {
 		if (type == DataType.TYPE_CHAR) {
+			if (strVal == other.strVal) {	// same dictionary value (see CharDictionary)
+				return 0;
+			}
 			return strVal.compareTo(other.strVal);
 		}
 		else if (type == DataType.TYPE_DATE) {
@@ -0,0 +1,317 @@
+package sql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Compiles a bound WHERE tree into composed method handles
+ *
+ * NOT, AND and OR nodes become method handle combinators with the short circuits of the
+ * interpreter, so a row is evaluated without a virtual call per node. The composed handle
+ * depends only on the shape of the tree (see shapeOf) and takes the predicates as arguments,
+ * so it is cached per shape and the predicates of each query are bound into it.
+ * Where the runtime has hidden classes (Java 15 and up), each query gets a hidden copy of
+ * CompiledWhere holding its handles in static finals, so the JIT inlines the whole tree.
+ * Otherwise the handles are called from instance fields of a CompiledNode.
+ * Compilation is off by default, setEnabled(false) falls back to the interpreter.
+ */
+public class WhereCompiler {
+	// Shapes beyond this many are compiled but not cached
+	static final int MAX_CACHED_SHAPES = 1024;
+
+	private static volatile boolean enabled = false;
+
+	// Method handles take one argument per predicate before the row, so trees wider than this are interpreted
+	static final int MAX_PREDICATES = 64;
+
+	// shape -> { row handle, columnar handle }, both taking the predicates first
+	private static final ConcurrentHashMap<String, MethodHandle[]> cache = new ConcurrentHashMap<String, MethodHandle[]>();
+
+	private static final MethodHandle EVALUATE_ROW;
+	private static final MethodHandle EVALUATE_COLUMNAR;
+	private static final MethodHandle AND;
+	private static final MethodHandle OR;
+	private static final MethodHandle NOT;
+	private static final MethodHandle IS_FALSE;
+	private static final MethodHandle IS_TRUE;
+
+	// Looked up reflectively to keep running on Java 8, null if there are no hidden classes
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final Method DEFINE_HIDDEN;	// Lookup.defineHiddenClassWithClassData
+	private static final Method CLASS_DATA;	// MethodHandles.classData
+	private static final Object NO_OPTIONS;	// empty Lookup.ClassOption[]
+	private static final byte[] TEMPLATE;	// class file of CompiledWhere
+
+	static {
+		MethodHandles.Lookup lookup = LOOKUP;
+		MethodType binary = MethodType.methodType(int.class, int.class, int.class);
+		MethodType test = MethodType.methodType(boolean.class, int.class);
+		try {
+			EVALUATE_ROW = lookup.findVirtual(BoundNode.class, "evaluate", MethodType.methodType(int.class, ArrayList.class));
+			EVALUATE_COLUMNAR = lookup.findVirtual(BoundNode.class, "evaluate", MethodType.methodType(int.class, ColumnarTable.class, int.class));
+			AND = lookup.findStatic(MyCalc.class, "and", binary);
+			OR = lookup.findStatic(MyCalc.class, "or", binary);
+			NOT = lookup.findStatic(MyCalc.class, "not", MethodType.methodType(int.class, int.class));
+			IS_FALSE = lookup.findStatic(WhereCompiler.class, "isFalse", test);
+			IS_TRUE = lookup.findStatic(WhereCompiler.class, "isTrue", test);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+
+		Method define = null;
+		Method classData = null;
+		Object options = null;
+		byte[] template = null;
+		try {
+			Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+			options = Array.newInstance(option, 0);
+			define = MethodHandles.Lookup.class.getMethod("defineHiddenClassWithClassData", byte[].class, Object.class, boolean.class, options.getClass());
+			classData = MethodHandles.class.getMethod("classData", MethodHandles.Lookup.class, String.class, Class.class);
+			template = readTemplate();
+		} catch (ReflectiveOperationException e) {
+			define = null;
+		} catch (IOException e) {
+			define = null;
+		}
+		DEFINE_HIDDEN = (template == null) ? null : define;
+		CLASS_DATA = classData;
+		NO_OPTIONS = options;
+		TEMPLATE = template;
+	}
+
+	private static byte[] readTemplate() throws IOException {
+		InputStream in = WhereCompiler.class.getResourceAsStream("CompiledWhere.class");
+		if (in == null) {
+			return null;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				bytes.write(buf, 0, n);
+			}
+			return bytes.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	// Handles of a hidden CompiledWhere, called from its static initializer
+	static MethodHandle[] classData(MethodHandles.Lookup hidden) {
+		try {
+			return (MethodHandle[]) CLASS_DATA.invoke(null, hidden, "_", MethodHandle[].class);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Hidden copy of CompiledWhere evaluating with row and columnar, null if that is not possible
+	private static BoundNode defineHidden(MethodHandle row, MethodHandle columnar) {
+		if (DEFINE_HIDDEN == null) {
+			return null;
+		}
+		try {
+			MethodHandle[] data = {row, columnar};
+			MethodHandles.Lookup hidden = (MethodHandles.Lookup) DEFINE_HIDDEN.invoke(LOOKUP, TEMPLATE, data, true, NO_OPTIONS);
+			return (BoundNode) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	private static boolean isFalse(int b) {
+		return b == -1;
+	}
+
+	private static boolean isTrue(int b) {
+		return b == 1;
+	}
+
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	// Number of compiled shapes
+	public static int getCacheSize() {
+		return cache.size();
+	}
+
+	// Bound tree evaluated by composed method handles, root itself if compilation is off or useless
+	static BoundNode compile(BoundNode root) {
+		if (!enabled || root == null || root instanceof BoundPredicate) {
+			return root;
+		}
+
+		ArrayList<BoundNode> predicates = new ArrayList<BoundNode>();
+		StringBuilder shape = new StringBuilder();
+		shapeOf(root, shape, predicates);
+		int count = predicates.size();
+		if (count > MAX_PREDICATES) {
+			return root;
+		}
+
+		MethodHandle[] handles = cache.get(shape.toString());
+		if (handles == null) {
+			int[] next = {0};
+			MethodHandle row = build(root, count, next, ArrayList.class);
+			next[0] = 0;
+			MethodHandle columnar = build(root, count, next, ColumnarTable.class, int.class);
+			handles = new MethodHandle[] {row, columnar};
+			if (cache.size() < MAX_CACHED_SHAPES) {
+				cache.putIfAbsent(shape.toString(), handles);
+			}
+		}
+
+		// Predicates become constants of the handles, so calls to them can be inlined
+		Object[] leaves = predicates.toArray();
+		MethodHandle row = MethodHandles.insertArguments(handles[0], 0, leaves);
+		MethodHandle columnar = MethodHandles.insertArguments(handles[1], 0, leaves);
+		BoundNode compiled = defineHidden(row, columnar);
+		return (compiled != null) ? compiled : new CompiledNode(row, columnar);
+	}
+
+	// Shape of the tree in prefix notation, P for a predicate (collected left to right)
+	private static void shapeOf(BoundNode node, StringBuilder shape, ArrayList<BoundNode> predicates) {
+		if (node instanceof BoundNot) {
+			shape.append('~');
+			shapeOf(((BoundNot) node).b, shape, predicates);
+		}
+		else if (node instanceof BoundAnd || node instanceof BoundOr) {
+			BoundNode b1 = (node instanceof BoundAnd) ? ((BoundAnd) node).b1 : ((BoundOr) node).b1;
+			BoundNode b2 = (node instanceof BoundAnd) ? ((BoundAnd) node).b2 : ((BoundOr) node).b2;
+			shape.append((node instanceof BoundAnd) ? '&' : '|');
+			shapeOf(b1, shape, predicates);
+			shapeOf(b2, shape, predicates);
+		}
+		else {
+			shape.append('P');
+			predicates.add(node);
+		}
+	}
+
+	/*
+	 * Handle (BoundNode p0 .. p(count - 1), row...) -> int for node
+	 * row: ArrayList for records, ColumnarTable and int for a columnar row
+	 * next: index of the first predicate of node
+	 */
+	private static MethodHandle build(BoundNode node, int count, int[] next, Class<?>... row) {
+		if (node instanceof BoundNot) {
+			return MethodHandles.filterReturnValue(build(((BoundNot) node).b, count, next, row), NOT);
+		}
+		if (node instanceof BoundAnd) {
+			BoundAnd and = (BoundAnd) node;
+			MethodHandle h1 = build(and.b1, count, next, row);
+			return shortCircuit(h1, build(and.b2, count, next, row), IS_FALSE, -1, AND);
+		}
+		if (node instanceof BoundOr) {
+			BoundOr or = (BoundOr) node;
+			MethodHandle h1 = build(or.b1, count, next, row);
+			return shortCircuit(h1, build(or.b2, count, next, row), IS_TRUE, 1, OR);
+		}
+
+		// p(i).evaluate(row...), ignoring the other predicates
+		int i = next[0]++;
+		MethodHandle evaluate = (row.length == 1) ? EVALUATE_ROW : EVALUATE_COLUMNAR;
+		evaluate = MethodHandles.dropArguments(evaluate, 0, predicateTypes(i));
+		return MethodHandles.dropArguments(evaluate, i + 1, predicateTypes(count - i - 1));
+	}
+
+	private static Class<?>[] predicateTypes(int n) {
+		Class<?>[] types = new Class<?>[n];
+		Arrays.fill(types, BoundNode.class);
+		return types;
+	}
+
+	// h1 if stop(h1) holds, otherwise combine(h1, h2) (all taking the same arguments)
+	private static MethodHandle shortCircuit(MethodHandle h1, MethodHandle h2, MethodHandle stop, int stopValue, MethodHandle combine) {
+		Class<?>[] args = h1.type().parameterArray();
+
+		// (int first, args...) -> combine(first, h2(args...))
+		MethodHandle rest = MethodHandles.collectArguments(combine, 1, h2);
+		MethodHandle stopped = MethodHandles.dropArguments(MethodHandles.constant(int.class, stopValue), 0, int.class);
+		stopped = MethodHandles.dropArguments(stopped, 1, args);
+		MethodHandle test = MethodHandles.dropArguments(stop, 1, args);
+		return MethodHandles.foldArguments(MethodHandles.guardWithTest(test, stopped, rest), h1);
+	}
+}
+
+// Bound tree replaced by its compiled handles (see WhereCompiler)
+final class CompiledNode extends BoundNode {
+	private final MethodHandle row;	// (ArrayList) -> int
+	private final MethodHandle columnar;	// (ColumnarTable, int) -> int
+
+	CompiledNode(MethodHandle row, MethodHandle columnar) {
+		this.row = row;
+		this.columnar = columnar;
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		try {
+			return (int) row.invokeExact(rec);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int r) {
+		try {
+			return (int) columnar.invokeExact(t, r);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
+
+// Template of the hidden classes of WhereCompiler, only copies of it are ever initialized
+final class CompiledWhere extends BoundNode {
+	private static final MethodHandle ROW;	// (ArrayList) -> int
+	private static final MethodHandle COLUMNAR;	// (ColumnarTable, int) -> int
+
+	static {
+		MethodHandle[] handles = WhereCompiler.classData(MethodHandles.lookup());
+		ROW = handles[0];
+		COLUMNAR = handles[1];
+	}
+
+	@Override
+	public int evaluate(ArrayList<Value> rec) {
+		try {
+			return (int) ROW.invokeExact(rec);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public int evaluate(ColumnarTable t, int r) {
+		try {
+			return (int) COLUMNAR.invokeExact(t, r);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}